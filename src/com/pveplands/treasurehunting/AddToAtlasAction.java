@@ -0,0 +1,79 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.behaviours.Action;
+import com.wurmonline.server.behaviours.ActionEntry;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.items.Item;
+import com.wurmonline.server.items.ItemFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import org.gotti.wurmunlimited.modsupport.actions.ActionPerformer;
+import org.gotti.wurmunlimited.modsupport.actions.ModAction;
+import org.gotti.wurmunlimited.modsupport.actions.ModActions;
+
+/**
+ * Puts a treasure map into a treasure atlas. Using a treasure map on another
+ * treasure map binds both into a new atlas.
+ */
+public class AddToAtlasAction implements ActionPerformer, ModAction {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(AddToAtlasAction.class));
+    
+    private short actionId;
+    private ActionEntry actionEntry;
+    
+    public AddToAtlasAction() {
+        actionId = (short)ModActions.getNextActionId();
+        actionEntry = ActionEntry.createEntry(actionId, "Put in atlas", "putting in the atlas", new int[] { });
+        ModActions.registerAction(actionEntry);
+    }
+    
+    @Override
+    public short getActionId() {
+        return actionId;
+    }
+    
+    public ActionEntry getActionEntry() {
+        return actionEntry;
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, @Nonnull Item target, short num, float counter) {
+        TreasureOptions options = TreasureHunting.getOptions();
+        
+        try {
+            if (source.getTemplateId() != options.getTreasuremapTemplateId() || source.getWurmId() == target.getWurmId())
+                return true;
+            
+            if (source.getOwnerId() != performer.getWurmId() || target.getOwnerId() != performer.getWurmId()) {
+                performer.getCommunicator().sendNormalServerMessage("You need to have the map and the atlas in your inventory.");
+                return true;
+            }
+            
+            if (TreasureAtlas.isAtlas(target)) {
+                if (!TreasureAtlas.get(target).isUsable())
+                    performer.getCommunicator().sendNormalServerMessage("The pages of the atlas are stuck together, you can't use it right now.");
+                else if (TreasureAtlas.get(target).add(source))
+                    performer.getCommunicator().sendNormalServerMessage("You put the treasure map into the atlas.");
+                else
+                    performer.getCommunicator().sendNormalServerMessage("The atlas has no room for another treasure map.");
+            }
+            else if (target.getTemplateId() == options.getTreasuremapTemplateId()) {
+                Item atlas = ItemFactory.createItem(options.getAtlasTemplateId(), Math.max(source.getQualityLevel(), target.getQualityLevel()), null);
+                performer.getInventory().insertItem(atlas, true);
+                
+                TreasureAtlas maps = TreasureAtlas.get(atlas);
+                maps.add(target);
+                maps.add(source);
+                
+                performer.getCommunicator().sendNormalServerMessage("You bind the treasure maps into an atlas.");
+                logger.info(String.format("%s bound treasure maps %d and %d into atlas %d.", performer.getName(), target.getWurmId(), source.getWurmId(), atlas.getWurmId()));
+            }
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not put treasure map %d into atlas %d.", source.getWurmId(), target.getWurmId()), e);
+        }
+        
+        return true;
+    }
+}
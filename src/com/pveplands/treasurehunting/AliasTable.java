@@ -0,0 +1,192 @@
+package com.pveplands.treasurehunting;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Weighted sampling table using Vose's alias method. A draw is one call to
+ * the random number generator and two array reads, no matter how many
+ * values the table holds.
+ */
+public class AliasTable {
+    private static final AliasTable EMPTY = new AliasTable(new int[0], new double[0]);
+
+    private final int[] values;
+    private final double[] weights;
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * Builds a table from values and their (not necessarily normalised) weights.
+     * @param values Values that can be drawn.
+     * @param weights Weight of each value, must be positive.
+     */
+    private AliasTable(int[] values, double[] weights) {
+        int n = values.length;
+        double total = 0d;
+
+        for (double weight : weights)
+            total += weight;
+
+        this.values = values;
+        this.weights = new double[n];
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        double[] scaled = new double[n];
+        ArrayDeque<Integer> small = new ArrayDeque<>();
+        ArrayDeque<Integer> large = new ArrayDeque<>();
+
+        for (int i = 0; i < n; i++) {
+            this.weights[i] = weights[i] / total;
+            scaled[i] = this.weights[i] * n;
+
+            if (scaled[i] < 1d) small.add(i);
+            else large.add(i);
+        }
+
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.poll();
+            int more = large.poll();
+
+            probability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1d;
+
+            if (scaled[more] < 1d) small.add(more);
+            else large.add(more);
+        }
+
+        // Leftovers are 1 up to floating point error.
+        while (!large.isEmpty()) {
+            int i = large.poll();
+            probability[i] = 1d;
+            alias[i] = i;
+        }
+
+        while (!small.isEmpty()) {
+            int i = small.poll();
+            probability[i] = 1d;
+            alias[i] = i;
+        }
+    }
+
+    /**
+     * Builds a table from a list of entries, where duplicate entries add up
+     * to a higher weight for that value.
+     * @param entries List of values, may contain duplicates.
+     * @return Sampling table, empty if there were no entries.
+     */
+    public static AliasTable fromEntries(int[] entries) {
+        if (entries == null || entries.length == 0)
+            return EMPTY;
+
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+
+        for (int entry : entries)
+            counts.merge(entry, 1, Integer::sum);
+
+        int[] values = new int[counts.size()];
+        double[] weights = new double[counts.size()];
+        int i = 0;
+
+        for (Map.Entry<Integer, Integer> count : counts.entrySet()) {
+            values[i] = count.getKey();
+            weights[i++] = count.getValue();
+        }
+
+        return new AliasTable(values, weights);
+    }
+
+    /**
+     * Builds a table from values and their weights. Values with a weight of
+     * zero or less are left out.
+     * @param values Values that can be drawn.
+     * @param weights Weight of each value.
+     * @return Sampling table, empty if no value had a positive weight.
+     */
+    public static AliasTable fromWeights(int[] values, double[] weights) {
+        int n = 0;
+
+        for (int i = 0; i < values.length; i++)
+            if (weights[i] > 0d)
+                n++;
+
+        if (n == 0)
+            return EMPTY;
+
+        int[] keptValues = new int[n];
+        double[] keptWeights = new double[n];
+        n = 0;
+
+        for (int i = 0; i < values.length; i++) {
+            if (weights[i] > 0d) {
+                keptValues[n] = values[i];
+                keptWeights[n++] = weights[i];
+            }
+        }
+
+        return new AliasTable(keptValues, keptWeights);
+    }
+
+    /**
+     * Gets an empty table.
+     * @return Table without any values.
+     */
+    public static AliasTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Draws a value, the table must not be empty.
+     * @param random Random number generator to use.
+     * @return One of the table's values.
+     */
+    public int sample(Random random) {
+        double u = random.nextDouble() * values.length;
+        int i = (int)u;
+
+        return u - i < probability[i] ? values[i] : values[alias[i]];
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Gets a distinct value of the table.
+     * @param index Index from 0 to size() - 1.
+     * @return The value at the index.
+     */
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Gets the normalised chance to draw a value.
+     * @param index Index from 0 to size() - 1.
+     * @return Probability from 0 to 1.
+     */
+    public double getProbability(int index) {
+        return weights[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(values[i]).append(String.format("=%.4f", weights[i]));
+        }
+
+        return builder.append("]").toString();
+    }
+}
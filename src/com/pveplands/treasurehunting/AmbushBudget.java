@@ -0,0 +1,125 @@
+package com.pveplands.treasurehunting;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Limits how much ambush spawn weight can enter the world, for the whole
+ * server and for each region of ambushRegionSize by ambushRegionSize tiles.
+ * Both are token buckets: they hold up to their budget, and refill at a set
+ * weight per minute. A creature only spawns if both buckets of its chest
+ * have its weight left.
+ *
+ * A budget of 0 disables that bucket. A creature heavier than a whole
+ * budget may still spawn when that bucket is full.
+ */
+public class AmbushBudget {
+    private static final Bucket global = new Bucket();
+    private static final Map<Integer, Bucket> regions = new HashMap<>();
+
+    /**
+     * Regions whose bucket is full are forgotten once there are this many.
+     */
+    private static final int MAX_REGIONS = 1024;
+
+    private static class Bucket {
+        private double tokens = -1d;
+        private long updated;
+
+        /**
+         * Refills the bucket for the time that passed.
+         * @param now Current time in milliseconds.
+         * @param capacity Budget of the bucket.
+         * @param perMinute Refill per minute.
+         */
+        private void refill(long now, int capacity, int perMinute) {
+            if (tokens < 0d)
+                tokens = capacity;
+            else
+                tokens = Math.min(capacity, tokens + (now - updated) * perMinute / 60000d);
+
+            updated = now;
+        }
+
+        private boolean allows(int capacity, int weight) {
+            return capacity <= 0 || tokens >= weight || tokens >= capacity;
+        }
+
+        private boolean isFull(int capacity) {
+            return tokens >= capacity;
+        }
+    }
+
+    /**
+     * Takes spawn weight from the budget of a chest's region and the server.
+     * Nothing is taken if either of them doesn't have enough left.
+     * @param tileX X tile of the chest.
+     * @param tileY Y tile of the chest.
+     * @param weight Spawn weight of the creature.
+     * @return True if the creature may spawn.
+     */
+    public static synchronized boolean tryAcquire(int tileX, int tileY, int weight) {
+        TreasureOptions options = TreasureHunting.getOptions();
+        int globalBudget = options.getAmbushGlobalBudget();
+        int regionBudget = options.getAmbushRegionBudget();
+        long now = System.currentTimeMillis();
+
+        global.refill(now, globalBudget, options.getAmbushGlobalRefill());
+
+        Bucket region = null;
+
+        if (regionBudget > 0) {
+            int size = options.getAmbushRegionSize();
+            int key = (tileX / size) << 16 | (tileY / size);
+
+            if (!regions.containsKey(key) && regions.size() >= MAX_REGIONS)
+                forgetFullRegions(now);
+
+            region = regions.computeIfAbsent(key, k -> new Bucket());
+            region.refill(now, regionBudget, options.getAmbushRegionRefill());
+        }
+
+        if (!global.allows(globalBudget, weight)) {
+            TreasureMetrics.count("ambush.budget.global");
+            return false;
+        }
+
+        if (region != null && !region.allows(regionBudget, weight)) {
+            TreasureMetrics.count("ambush.budget.region");
+            return false;
+        }
+
+        if (globalBudget > 0)
+            global.tokens = Math.max(0d, global.tokens - weight);
+
+        if (region != null)
+            region.tokens = Math.max(0d, region.tokens - weight);
+
+        return true;
+    }
+
+    /**
+     * Removes regions that have refilled completely, they start full again
+     * when they are used the next time.
+     */
+    private static void forgetFullRegions(long now) {
+        TreasureOptions options = TreasureHunting.getOptions();
+
+        for (Iterator<Bucket> it = regions.values().iterator(); it.hasNext(); ) {
+            Bucket bucket = it.next();
+            bucket.refill(now, options.getAmbushRegionBudget(), options.getAmbushRegionRefill());
+
+            if (bucket.isFull(options.getAmbushRegionBudget()))
+                it.remove();
+        }
+    }
+
+    /**
+     * Forgets all used budget, e.g. after the budgets were changed.
+     */
+    public static synchronized void reset() {
+        global.tokens = -1d;
+        regions.clear();
+    }
+}
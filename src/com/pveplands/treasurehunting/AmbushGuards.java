@@ -0,0 +1,267 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.Players;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.creatures.Creatures;
+import com.wurmonline.server.players.Player;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the creatures that ambushed a player, so they don't stay
+ * in the world forever. A guard is removed after ambushGuardTimeout seconds,
+ * or earlier once the ambushed player has left the chest and no other player
+ * is near the guard.
+ *
+ * Guards that were tamed, dominated, or are being led are somebody's
+ * creature now, and are forgotten instead of removed.
+ *
+ * The guards are saved to mods/TreasureHunting/guards.dat, so they are
+ * still removed after a restart. The file holds how long each guard has
+ * been around, so the time the server was down doesn't count. It is written
+ * at most once a minute, a guard spawned shortly before a crash may stay.
+ */
+public class AmbushGuards {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(AmbushGuards.class));
+    private static final Path file = Paths.get("mods", "TreasureHunting", "guards.dat");
+    private static final int fileVersion = 1;
+
+    /**
+     * Guards are checked this often, in milliseconds.
+     */
+    private static final long CHECK_INTERVAL = 10000L;
+
+    /**
+     * Guards stay at least this long, in milliseconds, even if the player
+     * runs away right away.
+     */
+    private static final long GRACE_TIME = 60000L;
+
+    /**
+     * Changes are written to disk at most this often, in milliseconds.
+     */
+    private static final long SAVE_INTERVAL = 60000L;
+
+    private static final Map<Long, Guard> guards = new LinkedHashMap<>();
+    private static long nextCheck = 0L;
+    private static long nextSave = 0L;
+    private static boolean dirty = false;
+
+    private static class Guard {
+        private final long chestId;
+        private final int chestX, chestY;
+        private final long playerId;
+        private final long spawnTime;
+
+        private Guard(long chestId, int chestX, int chestY, long playerId, long spawnTime) {
+            this.chestId = chestId;
+            this.chestX = chestX;
+            this.chestY = chestY;
+            this.playerId = playerId;
+            this.spawnTime = spawnTime;
+        }
+    }
+
+    /**
+     * Remembers a creature that was spawned to ambush a player.
+     * @param guard The spawned creature.
+     * @param chestId WurmId of the treasure chest.
+     * @param chestX X tile of the chest.
+     * @param chestY Y tile of the chest.
+     * @param playerId WurmId of the ambushed player.
+     */
+    public static synchronized void register(Creature guard, long chestId, int chestX, int chestY, long playerId) {
+        guards.put(guard.getWurmId(), new Guard(chestId, chestX, chestY, playerId, System.currentTimeMillis()));
+        dirty = true;
+    }
+
+    /**
+     * Number of guards that are still in the world.
+     * @return Guard count.
+     */
+    public static synchronized int size() {
+        return guards.size();
+    }
+
+    /**
+     * Removes guards that have been around too long, or that nobody is
+     * fighting anymore. Called on every server poll, but only checks every
+     * few seconds.
+     */
+    public static synchronized void poll() {
+        long now = System.currentTimeMillis();
+
+        if (now < nextCheck)
+            return;
+
+        nextCheck = now + CHECK_INTERVAL;
+
+        if (!guards.isEmpty()) {
+            long start = System.nanoTime();
+            long timeout = TreasureHunting.getOptions().getAmbushGuardTimeout() * 1000L;
+            int distance = TreasureHunting.getOptions().getAmbushLeaveDistance();
+            int despawned = 0;
+
+            for (Iterator<Map.Entry<Long, Guard>> it = guards.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Long, Guard> entry = it.next();
+                Guard guard = entry.getValue();
+                Creature creature = Creatures.getInstance().getCreatureOrNull(entry.getKey());
+
+                // Killed, or gone for some other reason.
+                if (creature == null || creature.isDead()) {
+                    it.remove();
+                    dirty = true;
+                    continue;
+                }
+
+                if (isTaken(creature)) {
+                    if (logger.isLoggable(Level.FINE))
+                        logger.fine(String.format("%s (%d) of treasure chest %d belongs to somebody now, it is not removed.",
+                            creature.getName(), creature.getWurmId(), guard.chestId));
+
+                    it.remove();
+                    dirty = true;
+                    continue;
+                }
+
+                long age = now - guard.spawnTime;
+                boolean expired = timeout > 0 && age >= timeout;
+
+                if (expired || (age >= GRACE_TIME && isAbandoned(creature, guard, distance))) {
+                    if (logger.isLoggable(Level.FINE))
+                        logger.fine(String.format("Removing %s (%d) of treasure chest %d after %d seconds, %s.",
+                            creature.getName(), creature.getWurmId(), guard.chestId, age / 1000L, expired ? "timed out" : "nobody is near"));
+
+                    creature.destroy();
+                    it.remove();
+                    dirty = true;
+                    despawned++;
+                }
+            }
+
+            if (despawned > 0) {
+                TreasureMetrics.add("ambush.despawned", despawned);
+                logger.info(String.format("Removed %d ambushing creatures, %d left.", despawned, guards.size()));
+            }
+
+            TreasureMetrics.record("ambush.guards", System.nanoTime() - start);
+
+            // Keeps the saved ages current, at most a minute behind.
+            if (!guards.isEmpty())
+                dirty = true;
+        }
+
+        // Spawns and removals are saved together with the ages, instead of
+        // writing the whole file for every one of them.
+        if (dirty && now >= nextSave)
+            save();
+    }
+
+    /**
+     * Checks if a guard was tamed, dominated, or is being led.
+     */
+    private static boolean isTaken(Creature creature) {
+        return creature.isDominated() || creature.getLeader() != null || creature.getCareTakerId() != -10;
+    }
+
+    /**
+     * Checks if the ambushed player has left the chest, and no other player
+     * is near the guard.
+     */
+    private static boolean isAbandoned(Creature creature, Guard guard, int distance) {
+        Player target = Players.getInstance().getPlayerOrNull(guard.playerId);
+
+        if (target != null && !target.isOffline() && target.isWithinTileDistanceTo(guard.chestX, guard.chestY, 0, distance))
+            return false;
+
+        for (Player player : Players.getInstance().getPlayers())
+            if (player.isWithinTileDistanceTo(creature.getTileX(), creature.getTileY(), 0, distance))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Loads the guards from disk. Must be called after the creatures have
+     * been loaded, guards that don't exist anymore are dropped.
+     */
+    public static synchronized void load() {
+        guards.clear();
+
+        if (!Files.exists(file))
+            return;
+
+        int dropped = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt();
+
+            if (version != fileVersion) {
+                logger.warning(String.format("%s has version %d, expected %d. Ambushing creatures are not loaded.", file, version, fileVersion));
+                return;
+            }
+
+            int count = in.readInt();
+            long now = System.currentTimeMillis();
+
+            for (int i = 0; i < count; i++) {
+                long creatureId = in.readLong();
+                long chestId = in.readLong();
+                int chestX = in.readInt(), chestY = in.readInt();
+                long playerId = in.readLong();
+                long age = in.readLong();
+                Guard guard = new Guard(chestId, chestX, chestY, playerId, now - Math.max(0L, age));
+
+                if (Creatures.getInstance().getCreatureOrNull(creatureId) != null)
+                    guards.put(creatureId, guard);
+                else
+                    dropped++;
+            }
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not load ambushing creatures from %s.", file), e);
+        }
+
+        logger.info(String.format("Loaded %d ambushing creatures, dropped %d that don't exist anymore.", guards.size(), dropped));
+        dirty = dropped > 0;
+    }
+
+    /**
+     * Writes all guards and their age to disk.
+     */
+    private static void save() {
+        long now = System.currentTimeMillis();
+
+        try {
+            DataFiles.write(file, out -> {
+                out.writeInt(fileVersion);
+                out.writeInt(guards.size());
+
+                for (Map.Entry<Long, Guard> entry : guards.entrySet()) {
+                    Guard guard = entry.getValue();
+
+                    out.writeLong(entry.getKey());
+                    out.writeLong(guard.chestId);
+                    out.writeInt(guard.chestX);
+                    out.writeInt(guard.chestY);
+                    out.writeLong(guard.playerId);
+                    out.writeLong(now - guard.spawnTime);
+                }
+            });
+
+            dirty = false;
+            nextSave = now + SAVE_INTERVAL;
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not save ambushing creatures to %s.", file), e);
+        }
+    }
+}
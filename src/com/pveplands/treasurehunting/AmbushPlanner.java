@@ -0,0 +1,317 @@
+package com.pveplands.treasurehunting;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plans which creatures ambush a player digging up a treasure, before any
+ * of them is spawned.
+ *
+ * While there is spawn weight left, the two heaviest spawn groups that still
+ * fit (by index, from the last group down) are the high and low group. The
+ * high group is picked with a chance of (high + 1) / (high + low), the low
+ * group otherwise, and a member of the picked group spawns. Which groups
+ * fit only depends on the remaining weight and the tier's weight limit, so
+ * the choices are computed once per tier when the config is loaded.
+ *
+ * An ambush never has more than maxAmbushGuards creatures. A creature that
+ * fails to spawn ambushFailureLimit times in a row disables every group it
+ * is in, until the config is loaded again.
+ */
+public class AmbushPlanner {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(AmbushPlanner.class));
+    private static final int[] NONE = new int[0];
+
+    private final int[] groupWeights;
+    private final AliasTable[] members;
+    private final int[] spawnWeights;
+    private final int[] spawnLimits;
+    private final int maxGuards;
+    private final int failureLimit;
+    private final boolean[] disabled;
+    private final Map<Integer, Integer> failures = new HashMap<>();
+    private volatile int[][] highGroups;
+    private volatile int[][] lowGroups;
+
+    private AmbushPlanner(int[] groupWeights, AliasTable[] members, int[] spawnWeights, int[] spawnLimits, int maxGuards, int failureLimit) {
+        this.groupWeights = groupWeights;
+        this.members = members;
+        this.spawnWeights = spawnWeights;
+        this.spawnLimits = spawnLimits;
+        this.maxGuards = maxGuards;
+        this.failureLimit = failureLimit;
+        this.disabled = new boolean[members.length];
+
+        buildChoices();
+    }
+
+    /**
+     * Builds the planner from the spawn groups and tiers of the config.
+     * Creatures whose template doesn't exist are left out of their group,
+     * groups without weight or without creatures can never spawn.
+     * @param options Loaded config.
+     * @return Planner for the config.
+     */
+    public static AmbushPlanner compile(TreasureOptions options) {
+        int[][] spawnGroups = options.getSpawnGroups() == null ? new int[0][] : options.getSpawnGroups();
+        int[] groupWeights = options.getGroupWeights() == null ? new int[0] : options.getGroupWeights();
+        int[] spawnWeights = options.getSpawnWeights() == null ? new int[10] : options.getSpawnWeights();
+        int[] spawnLimits = options.getSpawnLimits() == null ? new int[10] : options.getSpawnLimits();
+
+        CreatureTable creatures = options.getCreatureTable();
+        int groups = Math.min(spawnGroups.length, groupWeights.length);
+        AliasTable[] members = new AliasTable[groups];
+
+        for (int group = 0; group < groups; group++) {
+            int[] valid = Arrays.stream(spawnGroups[group]).filter(creatures::accepts).toArray();
+
+            if (valid.length < spawnGroups[group].length)
+                logger.warning(String.format("Spawn group %d has invalid creature template IDs, they are left out.", group));
+
+            members[group] = groupWeights[group] > 0 ? AliasTable.fromEntries(valid) : AliasTable.empty();
+
+            if (members[group].isEmpty())
+                logger.warning(String.format("Spawn group %d has no weight or no creatures, it never spawns.", group));
+        }
+
+        return new AmbushPlanner(Arrays.copyOf(groupWeights, groups), members, spawnWeights, spawnLimits,
+            options.getMaxAmbushGuards(), options.getAmbushFailureLimit());
+    }
+
+    /**
+     * Computes the high and low group of every tier and remaining weight,
+     * without the disabled groups.
+     */
+    private synchronized void buildChoices() {
+        AliasTable[] usable = new AliasTable[members.length];
+
+        for (int group = 0; group < members.length; group++)
+            usable[group] = disabled[group] ? AliasTable.empty() : members[group];
+
+        int[][] high = new int[spawnWeights.length][];
+        int[][] low = new int[spawnWeights.length][];
+        int[] found = new int[2];
+
+        for (int tier = 0; tier < spawnWeights.length; tier++) {
+            int weight = Math.max(0, spawnWeights[tier]);
+
+            high[tier] = new int[weight + 1];
+            low[tier] = new int[weight + 1];
+
+            for (int remaining = 0; remaining <= weight; remaining++) {
+                findGroups(groupWeights, usable, remaining, spawnLimits[tier], found);
+                high[tier][remaining] = found[0];
+                low[tier][remaining] = found[1];
+            }
+        }
+
+        lowGroups = low;
+        highGroups = high;
+    }
+
+    /**
+     * Finds the high and low group for a remaining weight and limit.
+     * @param groupWeights Weight of each group.
+     * @param members Creatures of each group, empty groups are skipped.
+     * @param weight Remaining spawn weight.
+     * @param limit Heaviest group that may spawn.
+     * @param found Receives the high and low group index, -1 if none fits.
+     */
+    private static void findGroups(int[] groupWeights, AliasTable[] members, int weight, int limit, int[] found) {
+        found[0] = found[1] = -1;
+
+        for (int i = members.length - 1; i >= 0; i--) {
+            if (members[i].isEmpty() || weight < groupWeights[i] || groupWeights[i] > limit)
+                continue;
+
+            if (found[0] < 0) {
+                found[0] = i;
+            }
+            else {
+                found[1] = i;
+                break;
+            }
+        }
+
+        if (found[1] < 0)
+            found[1] = found[0];
+    }
+
+    /**
+     * Creatures of a planned ambush, and the spawn weight each of them used.
+     */
+    public static class Plan {
+        private final int[] templateIds;
+        private final int[] weights;
+
+        private Plan(int[] templateIds, int[] weights) {
+            this.templateIds = templateIds;
+            this.weights = weights;
+        }
+
+        public int size() {
+            return templateIds.length;
+        }
+
+        public int getTemplateId(int index) {
+            return templateIds[index];
+        }
+
+        public int getWeight(int index) {
+            return weights[index];
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(templateIds);
+        }
+    }
+
+    /**
+     * Plans a whole ambush.
+     * @param tier Treasure tier, 0 to 9.
+     * @param random Random number generator to use.
+     * @return Creatures to spawn, in order.
+     */
+    public Plan plan(int tier, Random random) {
+        int[][] highGroups = this.highGroups, lowGroups = this.lowGroups;
+
+        if (tier < 0 || tier >= highGroups.length)
+            return new Plan(NONE, NONE);
+
+        long start = System.nanoTime();
+        int[] high = highGroups[tier], low = lowGroups[tier];
+        int remaining = high.length - 1;
+        int[] ids = new int[8];
+        int[] weights = new int[8];
+        int count = 0;
+
+        while (remaining > 0 && high[remaining] >= 0) {
+            if (count >= maxGuards) {
+                TreasureMetrics.count("ambush.capped");
+                TreasureLog.warnLimited(logger, "ambush.capped", () -> String.format("Ambushes of tier %d are cut off at %d creatures, check the spawn weights.", tier, maxGuards));
+                break;
+            }
+            
+            int group = pickGroup(high[remaining], low[remaining], random);
+
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                weights = Arrays.copyOf(weights, count * 2);
+            }
+
+            weights[count] = groupWeights[group];
+            ids[count++] = members[group].sample(random);
+            remaining -= groupWeights[group];
+
+            if (logger.isLoggable(Level.FINE))
+                logger.fine(String.format("Planned creature %d from group %d, %d spawn weight left.", ids[count - 1], group, remaining));
+        }
+
+        if (remaining > 0 && logger.isLoggable(Level.FINE))
+            logger.fine(String.format("No spawn group fits the remaining %d weight of tier %d.", remaining, tier));
+
+        TreasureMetrics.record("ambush.plan", System.nanoTime() - start);
+
+        return new Plan(Arrays.copyOf(ids, count), Arrays.copyOf(weights, count));
+    }
+
+    /**
+     * Picks a single creature for any remaining weight and limit, without
+     * the precomputed tier choices.
+     * @param weight Remaining spawn weight.
+     * @param limit Heaviest group that may spawn.
+     * @param random Random number generator to use.
+     * @return Creature template ID, or -1 if no group fits.
+     */
+    public int pick(int weight, int limit, Random random) {
+        int[] found = new int[2];
+        AliasTable[] usable = new AliasTable[members.length];
+
+        for (int group = 0; group < members.length; group++)
+            usable[group] = isDisabled(group) ? AliasTable.empty() : members[group];
+
+        findGroups(groupWeights, usable, weight, limit, found);
+
+        if (found[0] < 0)
+            return -1;
+
+        return members[pickGroup(found[0], found[1], random)].sample(random);
+    }
+
+    /**
+     * Records that a creature spawned, which resets its failures.
+     * @param templateId Creature template ID.
+     */
+    public synchronized void reportSuccess(int templateId) {
+        if (!failures.isEmpty())
+            failures.remove(templateId);
+    }
+
+    /**
+     * Records that a creature could not be spawned. After too many failures
+     * in a row, all groups with that creature are disabled until the config
+     * is loaded again.
+     * @param templateId Creature template ID.
+     * @return True if this failure disabled one or more groups.
+     */
+    public synchronized boolean reportFailure(int templateId) {
+        TreasureMetrics.count("ambush.failed");
+
+        if (failures.merge(templateId, 1, Integer::sum) < failureLimit)
+            return false;
+
+        failures.remove(templateId);
+        boolean opened = false;
+
+        for (int group = 0; group < members.length; group++) {
+            if (disabled[group])
+                continue;
+
+            for (int i = 0; i < members[group].size(); i++) {
+                if (members[group].getValue(i) == templateId) {
+                    disabled[group] = opened = true;
+                    TreasureMetrics.count("ambush.breaker.open");
+                    logger.warning(String.format("Creature %d failed to spawn %d times in a row, spawn group %d is disabled until the config is reloaded.",
+                        templateId, failureLimit, group));
+                    break;
+                }
+            }
+        }
+
+        if (opened)
+            buildChoices();
+
+        return opened;
+    }
+
+    /**
+     * Checks if a group was disabled because its creatures failed to spawn.
+     * @param group Spawn group index.
+     * @return True if the group is disabled.
+     */
+    public synchronized boolean isDisabled(int group) {
+        return disabled[group];
+    }
+
+    private int pickGroup(int high, int low, Random random) {
+        return random.nextInt(groupWeights[high] + groupWeights[low]) <= groupWeights[high] ? high : low;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("AmbushPlanner[");
+
+        for (int group = 0; group < members.length; group++) {
+            if (group > 0) builder.append("; ");
+            builder.append(groupWeights[group]).append(':').append(members[group]);
+            if (isDisabled(group)) builder.append(" disabled");
+        }
+
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,247 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.items.Item;
+import com.wurmonline.server.sounds.SoundPlayer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Spawns the creatures of planned ambushes over several server ticks, so a
+ * big ambush doesn't spawn a dozen creatures in a single tick. Every tick,
+ * up to ambushSpawnsPerTick creatures spawn, taking turns between all
+ * ambushes that are still spawning. Each ambush plays one sound when its
+ * first creature appears.
+ *
+ * Queued creatures are not saved, an ambush that is still spawning when the
+ * server shuts down is cut short.
+ */
+public class AmbushScheduler {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(AmbushScheduler.class));
+
+    private static final ArrayDeque<Ambush> queue = new ArrayDeque<>();
+
+    /**
+     * Creatures of one ambush that are waiting to spawn.
+     */
+    public static class Ambush {
+        private final String performerName;
+        private final long performerId;
+        private final long chestId;
+        private final int chestX, chestY;
+        private final AmbushPlanner planner;
+
+        private int[] templateIds = new int[8];
+        private int[] weights = new int[8];
+        private String[] names = new String[8];
+        private int[] tileX = new int[8];
+        private int[] tileY = new int[8];
+        private float[] rotations = new float[8];
+        private byte[] genders = new byte[8];
+        private byte[] ages = new byte[8];
+        private String sound;
+        private int size = 0, next = 0;
+        private long waitingSince = 0L;
+
+        /**
+         * Starts a new ambush.
+         * @param performer The ambushed player.
+         * @param chest The treasure chest, the sound plays at its tile.
+         * @param planner Planner to report spawn results to.
+         */
+        public Ambush(Creature performer, Item chest, AmbushPlanner planner) {
+            this.performerName = performer.getName();
+            this.performerId = performer.getWurmId();
+            this.chestId = chest.getWurmId();
+            this.chestX = chest.getTileX();
+            this.chestY = chest.getTileY();
+            this.planner = planner;
+        }
+
+        /**
+         * Adds a creature to the ambush.
+         * @param templateId Creature template ID.
+         * @param weight Spawn weight of the creature, taken from the ambush budget.
+         * @param name Name of the creature.
+         * @param x X tile to spawn at.
+         * @param y Y tile to spawn at.
+         * @param rotation Rotation in degrees.
+         * @param gender Gender of the creature.
+         * @param age Age of the creature.
+         */
+        public void add(int templateId, int weight, String name, int x, int y, float rotation, byte gender, byte age) {
+            if (size == templateIds.length) {
+                int capacity = size * 2;
+
+                templateIds = Arrays.copyOf(templateIds, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                names = Arrays.copyOf(names, capacity);
+                tileX = Arrays.copyOf(tileX, capacity);
+                tileY = Arrays.copyOf(tileY, capacity);
+                rotations = Arrays.copyOf(rotations, capacity);
+                genders = Arrays.copyOf(genders, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+            }
+
+            templateIds[size] = templateId;
+            weights[size] = weight;
+            names[size] = name;
+            tileX[size] = x;
+            tileY[size] = y;
+            rotations[size] = rotation;
+            genders[size] = gender;
+            ages[size] = age;
+            size++;
+        }
+
+        /**
+         * Sets the sound that plays once, when the first creature spawns.
+         * @param sound Sound name.
+         */
+        public void setSound(String sound) {
+            this.sound = sound;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isDone() {
+            return next >= size;
+        }
+
+        /**
+         * Takes the next creature's weight from the budget of the chest's
+         * region and the server.
+         * @param now Current time in milliseconds.
+         * @return True if the creature may spawn now.
+         */
+        private boolean acquireBudget(long now) {
+            if (AmbushBudget.tryAcquire(chestX, chestY, weights[next])) {
+                if (waitingSince > 0L) {
+                    TreasureMetrics.record("ambush.budget.wait", (now - waitingSince) * 1000000L);
+                    waitingSince = 0L;
+                }
+
+                return true;
+            }
+
+            if (waitingSince == 0L) {
+                waitingSince = now;
+                TreasureMetrics.count("ambush.budget.queued");
+            }
+
+            return false;
+        }
+
+        /**
+         * Drops the creatures that haven't spawned, when the ambush waited
+         * too long for budget.
+         * @param now Current time in milliseconds.
+         * @return True if the ambush was cut short.
+         */
+        private boolean shrinkIfStarved(long now) {
+            long wait = TreasureHunting.getOptions().getAmbushBudgetWait() * 1000L;
+
+            if (waitingSince == 0L || now - waitingSince < wait)
+                return false;
+
+            int dropped = size - next;
+            TreasureMetrics.add("ambush.budget.shrunk", dropped);
+
+            if (logger.isLoggable(Level.FINE))
+                logger.fine(String.format("Ambush of %s waited %d seconds for spawn budget, %d creatures are left out.",
+                    performerName, (now - waitingSince) / 1000L, dropped));
+
+            next = size;
+
+            return true;
+        }
+
+        /**
+         * Spawns the next creature of the ambush.
+         */
+        private void spawnNext() {
+            int i = next++;
+            long start = System.nanoTime();
+
+            try {
+                Creature guard = Creature.doNew(templateIds[i], true, (tileX[i] << 2) + 2, (tileY[i] << 2) + 2, rotations[i], 0, names[i], genders[i], (byte)0, (byte)0, false, ages[i]);
+                AmbushGuards.register(guard, chestId, chestX, chestY, performerId);
+                planner.reportSuccess(templateIds[i]);
+
+                if (sound != null) {
+                    SoundPlayer.playSound(sound, chestX, chestY, true, 0.3f);
+                    sound = null;
+                }
+            }
+            catch (Exception e) {
+                // Reported once per creature, the planner disables its
+                // groups if it keeps failing.
+                int templateId = templateIds[i];
+                planner.reportFailure(templateId);
+                TreasureLog.warnLimited(logger, "ambush.failed." + templateId, () -> String.format("Failed to spawn treasure chest guard %d: %s", templateId, e));
+            }
+
+            TreasureMetrics.record("ambush.spawn", System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Queues an ambush, its creatures start spawning on the next tick.
+     * @param ambush Planned ambush.
+     */
+    public static synchronized void schedule(Ambush ambush) {
+        if (ambush.isDone())
+            return;
+
+        queue.addLast(ambush);
+
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(String.format("Queued %d creatures ambushing %s, %d ambushes spawning.", ambush.size(), ambush.performerName, queue.size()));
+    }
+
+    /**
+     * Number of ambushes that still have creatures to spawn.
+     * @return Spawning ambush count.
+     */
+    public static synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * Spawns this tick's share of creatures. Called on every server poll.
+     * Ambushes whose region or the server is out of spawn budget wait, and
+     * are cut short if they wait longer than ambushBudgetWait seconds.
+     */
+    public static synchronized void poll() {
+        if (queue.isEmpty())
+            return;
+
+        long now = System.currentTimeMillis();
+        int budget = TreasureHunting.getOptions().getAmbushSpawnsPerTick();
+        int waiting = 0;
+
+        if (budget <= 0)
+            budget = Integer.MAX_VALUE;
+
+        // Stops when every ambush in the queue is waiting for budget.
+        while (budget > 0 && waiting < queue.size()) {
+            Ambush ambush = queue.pollFirst();
+
+            if (ambush.acquireBudget(now)) {
+                ambush.spawnNext();
+                budget--;
+                waiting = 0;
+            }
+            else if (!ambush.shrinkIfStarved(now)) {
+                waiting++;
+            }
+
+            if (!ambush.isDone())
+                queue.addLast(ambush);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.pveplands.treasurehunting;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands log records to a background thread, which writes them to the
+ * server's own handlers. The queue is bounded, when it is full the record
+ * is dropped and counted instead of blocking the server tick.
+ */
+public class AsyncLogHandler extends Handler {
+    private final BlockingQueue<LogRecord> queue;
+    private final Handler[] targets;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * Starts the background thread.
+     * @param capacity Maximum number of records waiting to be written.
+     * @param targets Handlers that actually write the records.
+     */
+    public AsyncLogHandler(int capacity, Handler[] targets) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, capacity));
+        this.targets = targets;
+
+        worker = new Thread(this::run, "TreasureHunting log writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (!running || !isLoggable(record))
+            return;
+
+        // The caller can't be found from the writer thread, and looking it
+        // up here means walking the stack. The logger name has the class.
+        record.setSourceClassName(record.getLoggerName());
+        record.setSourceMethodName(null);
+
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+            TreasureMetrics.count("log.dropped");
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            try {
+                LogRecord record = queue.poll(1, TimeUnit.SECONDS);
+
+                if (record == null)
+                    continue;
+
+                for (Handler target : targets)
+                    target.publish(record);
+            }
+            catch (InterruptedException e) {
+                running = false;
+            }
+            catch (Exception e) {
+                // Nowhere left to log this, keep the writer alive.
+            }
+        }
+    }
+
+    /**
+     * Number of records dropped because the queue was full.
+     * @return Dropped record count.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void flush() {
+        for (Handler target : targets)
+            target.flush();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+
+        try {
+            worker.join(5000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flush();
+    }
+}
@@ -0,0 +1,259 @@
+package com.pveplands.treasurehunting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the reward planner many times per quality level on all cores, and
+ * writes histograms of the chest contents. Covers what the closed form of
+ * the ExpectedValueCalculator can't, like the spread of coin counts and the
+ * tails of the money reward.
+ *
+ * Runs offline with the server and modloader jars on the classpath:
+ * java com.pveplands.treasurehunting.ChestSimulator [properties file] [chests per QL] [output directory] [seed]
+ *
+ * Writes summary.csv (mean, deviation, and percentiles per quality and
+ * metric) and histograms.csv (count per value, per quality and metric).
+ * Items are counted as planned, before stacking.
+ */
+public class ChestSimulator {
+    /**
+     * Chests planned by a single task before it stops splitting.
+     */
+    private static final int THRESHOLD = 4096;
+
+    private static final String[] METRICS = new String[] {
+        "items", "coins", "coinValue", "sleepPowders", "metalGrams", "sourceGrams", "rarityItems"
+    };
+
+    private static final Map<Integer, Integer> coinValues = new TreeMap<>();
+
+    static {
+        int[] templateIds = new int[] { 61, 57, 53, 60, 56, 52, 58, 54, 50, 59, 55, 51 };
+        int[] values = new int[] { 20000000, 5000000, 1000000, 200000, 50000, 10000, 2000, 500, 100, 20, 5, 1 };
+
+        for (int i = 0; i < templateIds.length; i++)
+            coinValues.put(templateIds[i], values[i]);
+    }
+
+    /**
+     * Sparse histogram of integer values.
+     */
+    public static class Histogram {
+        private final TreeMap<Long, Long> counts = new TreeMap<>();
+        private long samples = 0;
+        private double sum = 0d;
+        private double squares = 0d;
+
+        public void add(long value) {
+            counts.merge(value, 1L, Long::sum);
+            samples++;
+            sum += value;
+            squares += (double)value * value;
+        }
+
+        public void merge(Histogram other) {
+            for (Map.Entry<Long, Long> entry : other.counts.entrySet())
+                counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+
+            samples += other.samples;
+            sum += other.sum;
+            squares += other.squares;
+        }
+
+        public double getMean() {
+            return samples == 0 ? 0d : sum / samples;
+        }
+
+        public double getDeviation() {
+            if (samples < 2)
+                return 0d;
+
+            double mean = getMean();
+
+            return Math.sqrt(Math.max(0d, (squares - samples * mean * mean) / (samples - 1)));
+        }
+
+        /**
+         * Gets the smallest value that at least the given fraction of samples is less or equal to.
+         * @param fraction From 0 to 1.
+         * @return Value, or 0 if there are no samples.
+         */
+        public long getPercentile(double fraction) {
+            long wanted = (long)Math.ceil(fraction * samples);
+            long seen = 0;
+
+            for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+                seen += entry.getValue();
+
+                if (seen >= wanted)
+                    return entry.getKey();
+            }
+
+            return counts.isEmpty() ? 0 : counts.lastKey();
+        }
+
+        public Map<Long, Long> getCounts() {
+            return counts;
+        }
+    }
+
+    /**
+     * Plans a range of chests, splitting the range until it is small enough.
+     */
+    private static class SimulationTask extends RecursiveTask<Histogram[]> {
+        private final double quality;
+        private final int chests;
+        private final SplittableRandom seed;
+
+        SimulationTask(double quality, int chests, SplittableRandom seed) {
+            this.quality = quality;
+            this.chests = chests;
+            this.seed = seed;
+        }
+
+        @Override
+        protected Histogram[] compute() {
+            if (chests > THRESHOLD) {
+                SimulationTask left = new SimulationTask(quality, chests / 2, seed.split());
+                SimulationTask right = new SimulationTask(quality, chests - chests / 2, seed.split());
+                left.fork();
+
+                Histogram[] result = right.compute();
+                Histogram[] other = left.join();
+
+                for (int i = 0; i < result.length; i++)
+                    result[i].merge(other[i]);
+
+                return result;
+            }
+
+            Histogram[] result = new Histogram[METRICS.length];
+
+            for (int i = 0; i < result.length; i++)
+                result[i] = new Histogram();
+
+            Random random = new Random(seed.nextLong());
+
+            for (int i = 0; i < chests; i++)
+                measure(Treasurereward.plan(quality, (byte)0, random), result);
+
+            return result;
+        }
+    }
+
+    private static void measure(RewardManifest manifest, Histogram[] result) {
+        long coins = 0, coinValue = 0, powders = 0, metal = 0, source = 0, rarity = 0;
+
+        for (int i = 0; i < manifest.size(); i++) {
+            int count = manifest.getCount(i);
+            Integer value = coinValues.get(manifest.getTemplateId(i));
+
+            if (value != null) {
+                coins += count;
+                coinValue += (long)value * count;
+            }
+            else if (manifest.getTemplateId(i) == 666)
+                powders += count;
+            else if (manifest.getTemplateId(i) == 763)
+                source += (long)manifest.getWeight(i) * count;
+            else if (manifest.hasFlag(i, RewardManifest.FLAG_CLAMP_WEIGHT))
+                metal += (long)manifest.getWeight(i) * count;
+
+            if (manifest.getRarity(i) > 0)
+                rarity += count;
+        }
+
+        result[0].add(manifest.getItemCount());
+        result[1].add(coins);
+        result[2].add(coinValue);
+        result[3].add(powders);
+        result[4].add(metal);
+        result[5].add(source);
+        result[6].add(rarity);
+    }
+
+    /**
+     * Simulates chests of a single quality level.
+     * @param pool Pool to run on.
+     * @param quality Effective quality of the treasure.
+     * @param chests Number of chests to plan.
+     * @param seed Seed for this quality level.
+     * @return One histogram per metric.
+     */
+    public static Histogram[] simulate(ForkJoinPool pool, double quality, int chests, long seed) {
+        return pool.invoke(new SimulationTask(quality, chests, new SplittableRandom(seed)));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path config = Paths.get(args.length > 0 ? args[0] : "mods/TreasureHunting.properties");
+        int chests = args.length > 1 ? Integer.valueOf(args[1]) : 100000;
+        Path output = Paths.get(args.length > 2 ? args[2] : "simulation");
+        long seed = args.length > 3 ? Long.valueOf(args[3]) : System.nanoTime();
+
+        Properties properties = new Properties();
+
+        try (InputStream stream = Files.newInputStream(config)) {
+            properties.load(stream);
+        }
+
+        // The background log writer is a daemon thread, whatever is still
+        // queued when main returns would be lost.
+        properties.setProperty("asyncLogging", "false");
+        TreasureHunting.getOptions().configure(properties);
+
+        // The planner logs every money reward, which is far too much here.
+        Logger.getLogger("com.pveplands.treasurehunting").setLevel(Level.WARNING);
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        Files.createDirectories(output);
+
+        System.out.println(String.format("Simulating %d chests per quality level on %d threads, seed %d.", chests, pool.getParallelism(), seed));
+        long start = System.nanoTime();
+
+        try (PrintWriter summary = writer(output.resolve("summary.csv"));
+             PrintWriter histograms = writer(output.resolve("histograms.csv"))) {
+            summary.println("quality,tier,metric,mean,deviation,min,p50,p90,p99,p999,max");
+            histograms.println("quality,tier,metric,value,count");
+
+            SplittableRandom seeds = new SplittableRandom(seed);
+
+            for (int quality = 1; quality <= 100; quality++) {
+                int tier = Math.max(0, Math.min(9, quality / 10));
+                Histogram[] result = simulate(pool, quality, chests, seeds.nextLong());
+
+                for (int m = 0; m < METRICS.length; m++) {
+                    Histogram h = result[m];
+
+                    summary.println(String.format(Locale.ROOT, "%d,%d,%s,%.4f,%.4f,%d,%d,%d,%d,%d,%d",
+                        quality, tier, METRICS[m], h.getMean(), h.getDeviation(), h.getPercentile(0d), h.getPercentile(0.5d),
+                        h.getPercentile(0.9d), h.getPercentile(0.99d), h.getPercentile(0.999d), h.getPercentile(1d)));
+
+                    for (Map.Entry<Long, Long> entry : h.getCounts().entrySet())
+                        histograms.println(String.format("%d,%d,%s,%d,%d", quality, tier, METRICS[m], entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+
+        System.out.println(String.format("Planned %d chests in %.1f seconds, written to %s.", chests * 100L, (System.nanoTime() - start) / 1e9, output.toAbsolutePath()));
+    }
+
+    private static PrintWriter writer(Path path) throws IOException {
+        return new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+    }
+}
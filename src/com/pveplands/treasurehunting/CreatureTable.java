@@ -0,0 +1,137 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.creatures.CreatureTemplate;
+import com.wurmonline.server.creatures.CreatureTemplateFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Creature templates of the spawn groups, indexed by template ID. Every
+ * template is looked up once when the table is built, planning an ambush
+ * afterwards only reads the arrays.
+ *
+ * Template IDs that don't exist are reported when the table is built, and
+ * left out of the spawn groups.
+ */
+public class CreatureTable {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(CreatureTable.class));
+
+    /**
+     * Ambushing creatures are never older than this.
+     */
+    private static final int MAX_AGE = 48;
+
+    private final boolean resolved;
+    private final CreatureTemplate[] templates;
+    private final int[] maxAges;
+    private final String[][] hitSounds;
+
+    private CreatureTable(int size, boolean resolved) {
+        this.resolved = resolved;
+        this.templates = new CreatureTemplate[size];
+        this.maxAges = new int[size];
+        this.hitSounds = new String[size][];
+    }
+
+    /**
+     * Creates an empty table, for before the creature templates are loaded.
+     * It accepts every template ID, and contains none of them.
+     * @return Empty creature table.
+     */
+    public static CreatureTable empty() {
+        return new CreatureTable(0, false);
+    }
+
+    /**
+     * Resolves the creature templates of all spawn groups. Requires the
+     * creature templates to be loaded.
+     * @param spawnGroups Creature template IDs of each spawn group.
+     * @return Creature table.
+     */
+    public static CreatureTable build(int[][] spawnGroups) {
+        int size = 0;
+
+        for (int[] group : spawnGroups)
+            for (int templateId : group)
+                size = Math.max(size, templateId + 1);
+
+        CreatureTable table = new CreatureTable(size, true);
+        List<Integer> invalid = new ArrayList<>();
+        int count = 0;
+
+        for (int[] group : spawnGroups) {
+            for (int templateId : group) {
+                if (templateId <= 0 || table.templates[templateId] != null || invalid.contains(templateId))
+                    continue;
+
+                if (table.resolve(templateId))
+                    count++;
+                else
+                    invalid.add(templateId);
+            }
+        }
+
+        if (!invalid.isEmpty())
+            logger.warning(String.format("Creature templates %s in the spawn groups do not exist, they never spawn.", invalid));
+
+        logger.info(String.format("Resolved %d ambush creature templates.", count));
+
+        return table;
+    }
+
+    /**
+     * Looks up a single creature template.
+     * @param templateId Creature template ID, must fit into the table.
+     * @return True if the template exists.
+     */
+    private boolean resolve(int templateId) {
+        try {
+            CreatureTemplate template = CreatureTemplateFactory.getInstance().getTemplate(templateId);
+
+            templates[templateId] = template;
+            maxAges[templateId] = Math.max(0, Math.min(MAX_AGE, template.getMaxAge()));
+            hitSounds[templateId] = new String[] { template.getHitSound((byte)0), template.getHitSound((byte)1) };
+
+            return true;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks if a creature can be put into a spawn group. Before the
+     * creature templates are loaded, every positive ID is accepted.
+     * @param templateId Creature template ID.
+     * @return True if the creature may spawn.
+     */
+    public boolean accepts(int templateId) {
+        return templateId > 0 && (!resolved || contains(templateId));
+    }
+
+    public boolean contains(int templateId) {
+        return templateId > 0 && templateId < templates.length && templates[templateId] != null;
+    }
+
+    public CreatureTemplate getTemplate(int templateId) {
+        return templates[templateId];
+    }
+
+    public String getName(int templateId) {
+        return templates[templateId].getName();
+    }
+
+    /**
+     * Oldest age an ambushing creature of this template spawns at.
+     * @param templateId Creature template ID.
+     * @return Max age, at most 48.
+     */
+    public int getMaxAge(int templateId) {
+        return maxAges[templateId];
+    }
+
+    public String getHitSound(int templateId, byte gender) {
+        return hitSounds[templateId][gender == 0 ? 0 : 1];
+    }
+}
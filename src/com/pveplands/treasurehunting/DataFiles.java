@@ -0,0 +1,41 @@
+package com.pveplands.treasurehunting;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes the mod's own data files in mods/TreasureHunting, e.g. the pending
+ * chests and the atlases.
+ */
+public class DataFiles {
+    /**
+     * Writes the contents of a data file.
+     */
+    @FunctionalInterface
+    public interface Content {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes a file through a temporary file next to it, which then replaces
+     * the old file. A crash never leaves a half written file behind, and
+     * the old file is kept if writing fails.
+     * @param file File to write, its directory is created if needed.
+     * @param content Writes the file's contents.
+     * @throws IOException The file could not be written.
+     */
+    public static void write(Path file, Content content) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createDirectories(file.getParent());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            content.write(out);
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -54,9 +54,29 @@ public class DigUpTreasureAction implements ActionPerformer, ModAction {
                 return true;
             }
             
+            // Digs for the open page of an atlas instead of a map item.
+            TreasureAtlas atlas = TreasureAtlas.isAtlas(target) ? TreasureAtlas.get(target) : null;
+            
+            if (atlas != null && !atlas.isUsable()) {
+                performer.getCommunicator().sendNormalServerMessage("The pages of the atlas are stuck together, you can't use it right now.");
+                return true;
+            }
+            
+            if (atlas != null && atlas.size() == 0) {
+                performer.getCommunicator().sendNormalServerMessage("The atlas is empty.");
+                return true;
+            }
+            
+            if (atlas != null ? !atlas.resolveLocation(atlas.getPage(), performer) : !Treasuremap.ResolveLocation(target, performer)) {
+                performer.getCommunicator().sendNormalServerMessage("You can't make any sense of this treasuremap right now, maybe try again later.");
+                return true;
+            }
+            
             int x = performer.getTileX(), y = performer.getTileY();
+            int mapX = atlas != null ? atlas.getData1(atlas.getPage()) >>> 16 : target.getDataX();
+            int mapY = atlas != null ? atlas.getData1(atlas.getPage()) & 0xFFFF : target.getDataY();
 
-            if (performer.isWithinTileDistanceTo(target.getDataX(), target.getDataY(), 0, 1)) {
+            if (performer.isWithinTileDistanceTo(mapX, mapY, 0, 1)) {
                 performer.getCommunicator().sendNormalServerMessage("You're too far away.");
                 return true;
             }
@@ -84,11 +104,20 @@ public class DigUpTreasureAction implements ActionPerformer, ModAction {
                 int time = performer.getCurrentAction().getTimeLeft();
                 
                 if (counter * 10f > time) {
-                    if (x != target.getDataX() || y != target.getDataY()) {
+                    if (x != mapX || y != mapY) {
                         performer.getCommunicator().sendNormalServerMessage("You can't seem to find anything here.");
                         Server.getInstance().broadCastAction(performer.getName() + " frowns as no treasure seems to be here.", performer, 5);
                         return true;
                     }
+                    
+                    // The chest is made from a real map, which is used up
+                    // as usual.
+                    if (atlas != null) {
+                        Item map = atlas.extract(atlas.getPage());
+                        performer.getInventory().insertItem(map, true);
+                        
+                        return action(action, performer, activated, map, num, counter);
+                    }
 
                     logger.info(String.format("%s will find a treasure at %d, %d and QL being %f", performer.getName(), target.getDataX(), target.getDataY(), target.getCurrentQualityLevel()));
 
@@ -158,8 +187,15 @@ public class DigUpTreasureAction implements ActionPerformer, ModAction {
             }
         }
         catch (Exception e) {
-            logger.log(Level.SEVERE, String.format("Dig for treasure failed. Deleting treasure map %d of effective quality %.2f anyway.", target.getWurmId(), target.getCurrentQualityLevel()), e);
-            Items.destroyItem(target.getWurmId());
+            // An atlas keeps its other maps, the open page was already
+            // taken out as a map item and handled by the nested call.
+            if (TreasureAtlas.isAtlas(target)) {
+                logger.log(Level.SEVERE, String.format("Dig for treasure with atlas %d failed.", target.getWurmId()), e);
+            }
+            else {
+                logger.log(Level.SEVERE, String.format("Dig for treasure failed. Deleting treasure map %d of effective quality %.2f anyway.", target.getWurmId(), target.getCurrentQualityLevel()), e);
+                Items.destroyItem(target.getWurmId());
+            }
             
             if (lock != null) {
                 logger.info(String.format("Destroying treasuremap large padlock with WurmId %d", lock.getWurmId()));
@@ -179,22 +215,34 @@ public class DigUpTreasureAction implements ActionPerformer, ModAction {
             
             if (chest != null) {
                 logger.info(String.format("Destroying failed treasurechest and contents with WurmId %d", chest.getWurmId()));
-                
-                try {
-                    for (Item contents : chest.getItemsAsArray())
-                        Items.destroyItem(contents.getWurmId());
-                }
-                catch (Exception inner) {
-                    logger.log(Level.SEVERE, "Destroying chest contents failed.", inner);
-                }
-                
-                Items.destroyItem(chest.getWurmId());
+                PendingChests.discard(chest.getWurmId());
+                destroyAll(chest);
             }
         }
         
         return false;
     }
     
+    /**
+     * Destroys a container and everything inside of it, innermost items
+     * first, so nested containers like the karma barrel don't leave their
+     * contents behind. An item that fails to be destroyed doesn't stop the
+     * others.
+     * @param container Item to destroy, e.g. a treasure chest.
+     */
+    private static void destroyAll(Item container) {
+        for (Item item : container.getItemsAsArray()) {
+            try {
+                destroyAll(item);
+            }
+            catch (Exception e) {
+                logger.log(Level.SEVERE, String.format("Destroying item %d failed.", item.getWurmId()), e);
+            }
+        }
+        
+        Items.destroyItem(container.getWurmId());
+    }
+    
     @Override
     public short getActionId() {
         return actionId;
@@ -0,0 +1,82 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.MiscConstants;
+import com.wurmonline.server.behaviours.Action;
+import com.wurmonline.server.behaviours.ActionEntry;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.items.Item;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import org.gotti.wurmunlimited.modsupport.actions.ActionPerformer;
+import org.gotti.wurmunlimited.modsupport.actions.ModAction;
+import org.gotti.wurmunlimited.modsupport.actions.ModActions;
+
+/**
+ * Shows staff members the expected treasure chest contents of the current
+ * config, and writes them for every quality level to
+ * mods/TreasureHunting/expectations.csv.
+ */
+public class ExpectedRewardsAction implements ActionPerformer, ModAction {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(ExpectedRewardsAction.class));
+    
+    private short actionId;
+    private ActionEntry actionEntry;
+    
+    public ExpectedRewardsAction() {
+        actionId = (short)ModActions.getNextActionId();
+        actionEntry = ActionEntry.createEntry(actionId, "Expected rewards", "calculating", MiscConstants.EMPTY_INT_ARRAY);
+        ModActions.registerAction(actionEntry);
+    }
+    
+    @Override
+    public short getActionId() {
+        return actionId;
+    }
+    
+    public ActionEntry getActionEntry() {
+        return actionEntry;
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer);
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer);
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, int tilex, int tiley, boolean onSurface, int heightOffset, int tile, short num, float counter) {
+        return performMyAction(performer);
+    }
+    
+    private boolean performMyAction(Creature performer) {
+        if (performer.getPower() <= 1) {
+            logger.warning(String.format("%s tried to calculate expected treasure rewards, likely trying to execute actions they shouldn't have access to.", performer));
+            return true;
+        }
+        
+        TreasureOptions options = TreasureHunting.getOptions();
+        
+        for (int quality = 10; quality <= 100; quality += 10)
+            performer.getCommunicator().sendNormalServerMessage(ExpectedValueCalculator.calculate(options, quality).toString());
+        
+        Path path = Paths.get("mods", "TreasureHunting", "expectations.csv");
+        
+        try {
+            ExpectedValueCalculator.writeCsv(options, path);
+            performer.getCommunicator().sendNormalServerMessage(String.format("All quality levels were written to %s.", path));
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not write expected rewards to %s.", path), e);
+            performer.getCommunicator().sendAlertServerMessage("Could not write the expected rewards file, check the server log.");
+        }
+        
+        return true;
+    }
+}
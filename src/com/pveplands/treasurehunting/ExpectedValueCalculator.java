@@ -0,0 +1,257 @@
+package com.pveplands.treasurehunting;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Calculates the expected contents of a treasure chest per quality level in
+ * closed form, from the compiled config and the formulas in Treasurereward.
+ * Meant for tuning the config without digging up hundreds of chests.
+ *
+ * Weights are the planned weights, before they are limited by the size of
+ * the barrel or the template's maximum weight when the items are created.
+ *
+ * Can be run offline with the server and modloader jars on the classpath:
+ * java com.pveplands.treasurehunting.ExpectedValueCalculator [properties file] [csv file]
+ */
+public class ExpectedValueCalculator {
+    /**
+     * Expected chest contents for one quality level.
+     */
+    public static class Expectation {
+        public final double quality;
+        public final int tier;
+        /** Money rolled, in iron. */
+        public double money;
+        public double karmaGrams;
+        public double metalGrams;
+        public double sleepPowders;
+        public double hotaChance;
+        public double rareItemChance;
+        public double veryRareChance;
+        public double extremelyRareChance;
+        public double unfinishedChance;
+        public double tierItems;
+        /** Chance of any rolled item to be at least rare. */
+        public double rarityChance;
+
+        public Expectation(double quality) {
+            this.quality = quality;
+            this.tier = Math.max(0, Math.min(9, (int)quality / 10));
+        }
+
+        public static String csvHeader() {
+            return "quality,tier,money,karmaGrams,metalGrams,sleepPowders,hotaChance,rareItemChance,veryRareChance,extremelyRareChance,unfinishedChance,tierItems,rarityChance";
+        }
+
+        public String toCsv() {
+            return String.format(Locale.ROOT, "%.0f,%d,%.2f,%.2f,%.2f,%.2f,%.6f,%.6f,%.6f,%.6f,%.6f,%.4f,%.8f",
+                quality, tier, money, karmaGrams, metalGrams, sleepPowders, hotaChance, rareItemChance,
+                veryRareChance, extremelyRareChance, unfinishedChance, tierItems, rarityChance);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("QL %.0f (tier %d): %.0f iron in coins, %.0fg source, %.0fg metal, %.1f powders, %.2f tier items, rare %.2f%%, very rare %.3f%%, extremely rare %.4f%%, unfinished %.3f%%, HotA %.2f%%",
+                quality, tier, money, karmaGrams, metalGrams, sleepPowders, tierItems, rareItemChance * 100d,
+                veryRareChance * 100d, extremelyRareChance * 100d, unfinishedChance * 100d, hotaChance * 100d);
+        }
+    }
+
+    /**
+     * Calculates the expectations for all quality levels from 1 to 100.
+     * @param options Loaded options, with compiled reward tables.
+     * @return One expectation per quality level.
+     */
+    public static List<Expectation> calculateAll(TreasureOptions options) {
+        List<Expectation> list = new ArrayList<>(100);
+
+        for (int quality = 1; quality <= 100; quality++)
+            list.add(calculate(options, quality));
+
+        return list;
+    }
+
+    /**
+     * Calculates the expected chest contents for a quality level.
+     * @param options Loaded options, with compiled reward tables.
+     * @param quality Effective quality of the treasure.
+     * @return Expected contents.
+     */
+    public static Expectation calculate(TreasureOptions options, double quality) {
+        Expectation e = new Expectation(quality);
+
+        calculateMoney(options, quality, e);
+
+        // Karma, see Treasurereward.addKarmaReward.
+        if (options.getBaseKarmaReward() >= 1) {
+            int bonus = (int)(quality * options.getKarmaMultiplier());
+            int weight = bonus > 0 ? options.getBaseKarmaReward() + bonus : (int)Math.ceil(quality / 10 * options.getBaseKarmaReward());
+
+            e.karmaGrams = Math.max(0, weight);
+        }
+
+        // Precious metals, see Treasurereward.addPreciousMetal.
+        AliasTable metals = options.getMetalTable();
+
+        if (!metals.isEmpty() && options.getBaseMetalWeight() > 0) {
+            int base = options.getBaseMetalWeight();
+            int bonus = (int)Math.ceil(quality / 10d * options.getMetalMultiplier() * base - base);
+            double weight = bonus > 0 ? base + (bonus - 1) / 2d : Math.ceil(quality / 10d * base);
+            double dragon = 0d;
+
+            for (int i = 0; i < metals.size(); i++)
+                if (metals.getValue(i) == 371 || metals.getValue(i) == 372)
+                    dragon += metals.getProbability(i);
+
+            e.metalGrams = weight * (1d - dragon) + weight * options.getDragonMultiplier() * dragon;
+        }
+
+        // Sleep powder, see Treasurereward.addSleepPowder.
+        if (options.getBaseSleepPowderReward() > 0) {
+            double count = options.getBaseSleepPowderReward();
+
+            if (options.getSleepPowderMultiplier() > 0f) {
+                int bonus = (int)Math.ceil(quality / 10d * options.getSleepPowderMultiplier() * options.getBaseSleepPowderReward());
+
+                if (bonus > 0) count += (bonus - 1) / 2d;
+            }
+
+            e.sleepPowders = count;
+        }
+
+        if (options.getHotaChance() > 0f)
+            e.hotaChance = percent(options.getHotaChance() + (options.getHotaMultiplier() > 0 ? quality / 10d * options.getHotaMultiplier() : 0d));
+
+        if (!options.getRareTable().isEmpty() && options.getRareChance() > 0f)
+            e.rareItemChance = percent(options.getRareChance() + (options.getRareMultiplier() > 0f ? quality / 10d * options.getRareMultiplier() : 0d));
+
+        if (!options.getVeryRareTable().isEmpty() && options.getVeryRareChance() > 0)
+            e.veryRareChance = 1d / Math.max(1, options.getVeryRareChance() - (int)Math.round(quality / 10d * options.getVeryRareMultiplier()));
+
+        if (!options.getExtremelyRareTable().isEmpty() && options.getExtremelyRareChance() > 0)
+            e.extremelyRareChance = 1d / Math.max(1, options.getExtremelyRareChance() - (int)Math.round(quality / 10d * options.getExtremelyRareMultiplier()));
+
+        if (!options.getUnfinishedTable().isEmpty() && options.getUnfinishedChance() >= 1)
+            e.unfinishedChance = 1d / Math.max(1, options.getUnfinishedChance() - (int)(quality / 10d * options.getUnfinishedMultiplier()));
+
+        // Tier rewards, see Treasurereward.addTierRewards.
+        if (!options.getTierTables()[e.tier].isEmpty()) {
+            int chance = options.getTierChances()[e.tier];
+            e.tierItems = options.getTierGuaranteed()[e.tier] + (chance > 0 ? options.getTierOptional()[e.tier] / (double)chance : 0d);
+        }
+
+        e.rarityChance = 1d - options.getRarityTable().getChance(0);
+
+        return e;
+    }
+
+    /**
+     * Money is the base reward plus Math.round(nextDouble() * bonus). For an
+     * integer bonus b, that gives every value between the ends a chance of
+     * 1/|b|, and both ends 1/(2|b|). Rolls below 1 give nothing.
+     */
+    private static void calculateMoney(TreasureOptions options, double quality, Expectation e) {
+        int base = options.getBaseMoneyReward();
+
+        if (base < 1)
+            return;
+
+        long bonus = Math.round(base * ((quality / 10) * options.getMoneyMultiplier())) - base;
+        long low = base + Math.min(0, bonus);
+        long high = base + Math.max(0, bonus);
+
+        if (bonus == 0) {
+            e.money = base;
+            return;
+        }
+
+        double scale = 1d / Math.abs(bonus);
+        long from = Math.max(1, low);
+
+        if (from > high)
+            return;
+
+        // Sum over the range, minus half of each end that pays out.
+        double money = sum(from, high) - (low >= 1 ? low / 2d : 0d) - high / 2d;
+
+        e.money = money * scale;
+    }
+
+    /**
+     * Sum of all integers from a to b.
+     */
+    private static double sum(long a, long b) {
+        return (double)(a + b) * (b - a + 1) / 2d;
+    }
+
+    /**
+     * Chance of Random.nextFloat() &lt;= percent / 100.
+     */
+    private static double percent(double percent) {
+        return Math.max(0d, Math.min(1d, percent / 100d));
+    }
+
+    /**
+     * Writes the expectations for all quality levels as CSV.
+     * @param options Loaded options.
+     * @param path File to write to.
+     * @throws IOException Writing failed.
+     */
+    public static void writeCsv(TreasureOptions options, Path path) throws IOException {
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            out.println(Expectation.csvHeader());
+
+            for (Expectation e : calculateAll(options))
+                out.println(e.toCsv());
+        }
+    }
+
+    /**
+     * Prints the expectations of a config file, without a server.
+     * @param args Properties file (default mods/TreasureHunting.properties), and optionally a CSV file to write.
+     * @throws Exception Config could not be read.
+     */
+    public static void main(String[] args) throws Exception {
+        Path config = Paths.get(args.length > 0 ? args[0] : "mods/TreasureHunting.properties");
+        Properties properties = new Properties();
+
+        try (InputStream stream = Files.newInputStream(config)) {
+            properties.load(stream);
+        }
+
+        // Log synchronously, the background writer's queue is lost at exit.
+        properties.setProperty("asyncLogging", "false");
+
+        TreasureOptions options = TreasureHunting.getOptions();
+        options.configure(properties);
+
+        long start = System.nanoTime();
+        List<Expectation> expectations = calculateAll(options);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(Expectation.csvHeader());
+
+        for (Expectation e : expectations)
+            System.out.println(e.toCsv());
+
+        System.out.println(String.format("Calculated %d quality levels in %.2f ms.", expectations.size(), elapsed / 1e6));
+
+        if (args.length > 1) {
+            writeCsv(options, Paths.get(args[1]));
+            System.out.println(String.format("Written to %s.", args[1]));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.MiscConstants;
+import com.wurmonline.server.behaviours.Action;
+import com.wurmonline.server.behaviours.ActionEntry;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.items.Item;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import org.gotti.wurmunlimited.modsupport.actions.ActionPerformer;
+import org.gotti.wurmunlimited.modsupport.actions.ModAction;
+import org.gotti.wurmunlimited.modsupport.actions.ModActions;
+
+/**
+ * Enables staff members to create the contents of all treasure chests that
+ * have not been opened yet.
+ */
+public class FlushChestsAction implements ActionPerformer, ModAction {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(FlushChestsAction.class));
+    
+    private short actionId;
+    private ActionEntry actionEntry;
+    
+    public FlushChestsAction() {
+        actionId = (short)ModActions.getNextActionId();
+        actionEntry = ActionEntry.createEntry(actionId, "Flush treasure chests", "flushing treasure chests", MiscConstants.EMPTY_INT_ARRAY);
+        ModActions.registerAction(actionEntry);
+    }
+    
+    @Override
+    public short getActionId() {
+        return actionId;
+    }
+    
+    public ActionEntry getActionEntry() {
+        return actionEntry;
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer);
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer);
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, int tilex, int tiley, boolean onSurface, int heightOffset, int tile, short num, float counter) {
+        return performMyAction(performer);
+    }
+    
+    private boolean performMyAction(Creature performer) {
+        if (performer.getPower() <= 1) {
+            logger.warning(String.format("%s tried to flush pending treasure chests, this might well fall under exploiting.", performer));
+            return true;
+        }
+        
+        int pending = PendingChests.size();
+        int flushed = PendingChests.flush();
+        
+        logger.info(String.format("%s flushed %d of %d pending treasure chests.", performer.getName(), flushed, pending));
+        performer.getCommunicator().sendNormalServerMessage(String.format("Created the contents of %d of %d unopened treasure chests.", flushed, pending));
+        
+        return true;
+    }
+}
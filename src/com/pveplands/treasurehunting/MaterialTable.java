@@ -0,0 +1,241 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.items.CreationEntry;
+import com.wurmonline.server.items.CreationMatrix;
+import com.wurmonline.server.items.ItemTemplate;
+import com.wurmonline.server.items.ItemTemplateFactory;
+import com.wurmonline.shared.util.MaterialUtilities;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Material candidates for reward item templates, indexed by template ID.
+ * Looking through the creation matrix is done once per template when the
+ * table is built, drawing a material afterwards is a couple of array reads.
+ *
+ * Templates made of wood are flagged instead, and get a random wood every
+ * time a material is drawn.
+ */
+public class MaterialTable {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(MaterialTable.class));
+    private static final byte[] UNKNOWN = new byte[] { 0 };
+
+    /**
+     * Resolved materials. Never changed once published, resolving another
+     * template publishes a new copy.
+     */
+    private static class Entries {
+        private final byte[][] candidates;
+        private final boolean[] wood;
+
+        private Entries(byte[][] candidates, boolean[] wood) {
+            this.candidates = candidates;
+            this.wood = wood;
+        }
+
+        private boolean contains(int templateId) {
+            return templateId < candidates.length && candidates[templateId] != null;
+        }
+
+        private Entries copy(int size) {
+            return new Entries(Arrays.copyOf(candidates, Math.max(size, candidates.length)), Arrays.copyOf(wood, Math.max(size, wood.length)));
+        }
+    }
+
+    private volatile Entries entries;
+
+    private MaterialTable(Entries entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Creates an empty table, which resolves templates as they are drawn.
+     * @return Empty material table.
+     */
+    public static MaterialTable empty() {
+        return new MaterialTable(new Entries(new byte[0][], new boolean[0]));
+    }
+
+    /**
+     * Resolves the materials of a list of templates. Requires the item
+     * templates and the creation matrix to be loaded.
+     * @param templateIds Item template IDs, may contain duplicates.
+     * @return Material table.
+     */
+    public static MaterialTable build(int[] templateIds) {
+        int size = 0;
+
+        for (int templateId : templateIds)
+            size = Math.max(size, templateId + 1);
+
+        Entries entries = new Entries(new byte[size][], new boolean[size]);
+        int resolved = 0;
+
+        for (int templateId : templateIds) {
+            if (templateId > 0 && !entries.contains(templateId)) {
+                resolve(entries, templateId);
+                resolved++;
+            }
+        }
+
+        logger.info(String.format("Resolved reward materials for %d item templates.", resolved));
+
+        return new MaterialTable(entries);
+    }
+
+    /**
+     * Draws a material for an item template.
+     * @param templateId Item template ID.
+     * @param random Random number generator.
+     * @return Material, or 0 if none was found.
+     */
+    public byte getMaterial(int templateId, Random random) {
+        if (templateId <= 0)
+            return 0;
+
+        Entries entries = this.entries;
+
+        if (!entries.contains(templateId))
+            entries = resolveMissing(templateId);
+
+        if (entries.wood[templateId])
+            return Treasurereward.getRandomWood(random);
+
+        byte[] materials = entries.candidates[templateId];
+
+        return materials.length == 1 ? materials[0] : materials[random.nextInt(materials.length)];
+    }
+
+    /**
+     * Resolves a template that was not in the config lists, e.g. when another
+     * mod adds rewards. The template is resolved into a copy, which replaces
+     * the published entries once it is complete.
+     * @param templateId Item template ID.
+     * @return Entries that contain the template.
+     */
+    private synchronized Entries resolveMissing(int templateId) {
+        if (entries.contains(templateId))
+            return entries;
+
+        Entries copy = entries.copy(templateId + 1);
+        resolve(copy, templateId);
+        entries = copy;
+
+        return copy;
+    }
+
+    /**
+     * Finds the right, or all appropriate materials for an item template.
+     * @param entries Entries that are not published yet.
+     * @param templateId Item template ID, must fit into the entries.
+     */
+    private static void resolve(Entries entries, int templateId) {
+        ItemTemplate template = ItemTemplateFactory.getInstance().getTemplateOrNull(templateId);
+
+        if (template == null) {
+            logger.warning(String.format("Can't resolve material of item template %d, it does not exist.", templateId));
+            entries.candidates[templateId] = UNKNOWN;
+            return;
+        }
+
+        CreationEntry creationEntry = CreationMatrix.getInstance().getCreationEntry(templateId);
+
+        if (creationEntry != null && creationEntry.getTotalNumberOfItems() > 2) {
+            byte material = creationEntry.getFinalMaterial();
+
+            if (material == 0) {
+                ItemTemplate source = ItemTemplateFactory.getInstance().getTemplateOrNull(creationEntry.getObjectSource());
+
+                if (source != null)
+                    material = source.getMaterial();
+            }
+
+            if (MaterialUtilities.isWood(material) || template.isWood()) {
+                setWood(entries, template);
+                return;
+            }
+
+            if (material > 0) {
+                set(entries, template, new byte[] { material });
+                return;
+            }
+        }
+
+        if (creationEntry != null && creationEntry.getTotalNumberOfItems() <= 2) {
+            ItemTemplate targetItem = ItemTemplateFactory.getInstance().getTemplateOrNull(creationEntry.getObjectTarget());
+            if (targetItem == null) {
+                setDefault(entries, template);
+                return;
+            }
+
+            byte material = targetItem.getMaterial();
+
+            if (MaterialUtilities.isWood(material)) {
+                setWood(entries, template);
+                return;
+            }
+
+            if (material > 0) {
+                set(entries, template, new byte[] { material });
+                return;
+            }
+
+            // Look deeper, at what the target item is made from. Duplicates
+            // are kept, so common materials keep their higher chance.
+            byte[] list = new byte[0];
+
+            for (CreationEntry deeper : CreationMatrix.getInstance().getSimpleEntries()) {
+                if (deeper.getObjectCreated() == creationEntry.getObjectTarget()) {
+                    ItemTemplate deeperTarget = ItemTemplateFactory.getInstance().getTemplateOrNull(deeper.getObjectTarget());
+                    material = deeperTarget == null ? 0 : deeperTarget.getMaterial();
+
+                    if (material > 0) {
+                        list = Arrays.copyOf(list, list.length + 1);
+                        list[list.length - 1] = material;
+                    }
+                }
+            }
+
+            if (list.length > 0) {
+                set(entries, template, list);
+                return;
+            }
+        }
+
+        setDefault(entries, template);
+    }
+
+    /**
+     * Falls back to the template's own material.
+     * @param template Item template.
+     */
+    private static void setDefault(Entries entries, ItemTemplate template) {
+        byte material = template.getMaterial();
+
+        if (MaterialUtilities.isWood(material))
+            setWood(entries, template);
+        else
+            set(entries, template, new byte[] { material });
+    }
+
+    private static void set(Entries entries, ItemTemplate template, byte[] materials) {
+        entries.candidates[template.getTemplateId()] = materials;
+
+        if (logger.isLoggable(Level.FINE)) {
+            StringBuilder names = new StringBuilder();
+
+            for (byte material : materials)
+                names.append(names.length() > 0 ? ", " : "").append(MaterialUtilities.getMaterialString(material));
+
+            logger.fine(String.format("Material for %s: %s", template.getName(), names));
+        }
+    }
+
+    private static void setWood(Entries entries, ItemTemplate template) {
+        entries.candidates[template.getTemplateId()] = UNKNOWN;
+        entries.wood[template.getTemplateId()] = true;
+        logger.fine(String.format("Material for %s: random wood", template.getName()));
+    }
+}
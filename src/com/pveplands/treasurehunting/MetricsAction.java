@@ -0,0 +1,71 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.MiscConstants;
+import com.wurmonline.server.behaviours.Action;
+import com.wurmonline.server.behaviours.ActionEntry;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.items.Item;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import org.gotti.wurmunlimited.modsupport.actions.ActionPerformer;
+import org.gotti.wurmunlimited.modsupport.actions.ModAction;
+import org.gotti.wurmunlimited.modsupport.actions.ModActions;
+
+/**
+ * Shows staff members the timings and counters of the Treasure Hunting mod,
+ * e.g. how long each reward stage takes.
+ */
+public class MetricsAction implements ActionPerformer, ModAction {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(MetricsAction.class));
+    
+    private short actionId;
+    private ActionEntry actionEntry;
+    
+    public MetricsAction() {
+        actionId = (short)ModActions.getNextActionId();
+        actionEntry = ActionEntry.createEntry(actionId, "Treasure metrics", "checking metrics", MiscConstants.EMPTY_INT_ARRAY);
+        ModActions.registerAction(actionEntry);
+    }
+    
+    @Override
+    public short getActionId() {
+        return actionId;
+    }
+    
+    public ActionEntry getActionEntry() {
+        return actionEntry;
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer);
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer);
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, int tilex, int tiley, boolean onSurface, int heightOffset, int tile, short num, float counter) {
+        return performMyAction(performer);
+    }
+    
+    private boolean performMyAction(Creature performer) {
+        if (performer.getPower() <= 1) {
+            logger.warning(String.format("%s tried to look at the TreasureHunting metrics, likely trying to execute actions they shouldn't have access to.", performer));
+            return true;
+        }
+        
+        List<String> lines = TreasureMetrics.report();
+        
+        if (lines.isEmpty())
+            performer.getCommunicator().sendNormalServerMessage("Nothing was measured yet.");
+        
+        for (String line : lines)
+            performer.getCommunicator().sendNormalServerMessage(line);
+        
+        return true;
+    }
+}
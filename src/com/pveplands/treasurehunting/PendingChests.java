@@ -0,0 +1,407 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.Items;
+import com.wurmonline.server.NoSuchItemException;
+import com.wurmonline.server.items.Item;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the planned contents of treasure chests that nobody has opened yet.
+ * The items are only created when a player first opens the chest, or when a
+ * GameMaster flushes all pending chests.
+ *
+ * Pending manifests are saved to mods/TreasureHunting/pendingchests.dat,
+ * so unopened chests keep their contents over a restart. Changes are only
+ * appended to pendingchests.journal while the server runs, which is folded
+ * into the .dat file on a background thread every few hundred changes, and
+ * on every start.
+ *
+ * Chests that are destroyed unopened, e.g. by decay, are discarded through
+ * a hook in Items.destroyItem.
+ *
+ * If the .dat file has an unknown version, pending chests are turned off
+ * until the next start, and the file is left alone. New chests are filled
+ * when they are dug up instead.
+ */
+public class PendingChests {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(PendingChests.class));
+    private static final Path file = Paths.get("mods", "TreasureHunting", "pendingchests.dat");
+    private static final Path journalFile = Paths.get("mods", "TreasureHunting", "pendingchests.journal");
+    private static final Path rolledFile = Paths.get("mods", "TreasureHunting", "pendingchests.journal.old");
+    private static final int fileVersion = 1;
+
+    private static final byte ADDED = 1;
+    private static final byte REMOVED = 2;
+
+    /**
+     * The journal is folded into the .dat file after this many changes.
+     */
+    private static final int COMPACT_AFTER = 500;
+
+    /**
+     * Changed only while holding the class lock, but read without it, so
+     * the lookups for every opened container and destroyed item are cheap.
+     */
+    private static final Map<Long, RewardManifest> pending = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = true;
+    private static DataOutputStream journal;
+    private static int journalRecords = 0;
+    private static boolean compacting = false;
+    private static ExecutorService writer;
+
+    /**
+     * Whether chest contents may be kept for later. False if the saved
+     * pending chests could not be read, so they are not overwritten.
+     * @return True if register() may be used.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Remembers the planned contents of a chest until it is opened.
+     * @param chest Treasure chest, empty for now.
+     * @param manifest Planned contents.
+     */
+    public static synchronized void register(Item chest, RewardManifest manifest) {
+        if (!enabled)
+            throw new IllegalStateException("Pending treasure chests are turned off.");
+
+        pending.put(chest.getWurmId(), manifest);
+        append(ADDED, chest.getWurmId(), manifest);
+    }
+
+    /**
+     * Forgets a chest's planned contents, e.g. when the chest is destroyed.
+     * Called for every destroyed item, so it must be cheap for items that
+     * are not pending chests.
+     * @param chestId WurmId of the chest.
+     */
+    public static void discard(long chestId) {
+        if (!pending.containsKey(chestId))
+            return;
+
+        synchronized (PendingChests.class) {
+            if (pending.remove(chestId) != null)
+                append(REMOVED, chestId, null);
+        }
+    }
+
+    /**
+     * Number of chests whose contents have not been created yet.
+     * @return Pending chest count.
+     */
+    public static int size() {
+        return pending.size();
+    }
+
+    /**
+     * Creates the contents of a chest, if they are still pending. This is
+     * called whenever a treasure chest gets a new watcher, so it must be
+     * cheap for chests that have no pending contents.
+     * @param chest Chest being opened.
+     * @return Number of items created, or -1 if the chest had no pending contents.
+     */
+    public static int materialise(Item chest) {
+        RewardManifest manifest;
+
+        if (!pending.containsKey(chest.getWurmId()))
+            return -1;
+
+        synchronized (PendingChests.class) {
+            manifest = pending.remove(chest.getWurmId());
+
+            if (manifest == null)
+                return -1;
+
+            append(REMOVED, chest.getWurmId(), null);
+        }
+
+        int created = RewardMaterialiser.materialise(chest, manifest);
+        logger.info(String.format("Created %d of %d planned items in treasure chest (%d) on first opening.", created, manifest.getItemCount(), chest.getWurmId()));
+
+        return created;
+    }
+
+    /**
+     * Creates the contents of all pending chests that still exist.
+     * @return Number of chests whose contents were created.
+     */
+    public static int flush() {
+        List<Long> chestIds;
+
+        synchronized (PendingChests.class) {
+            chestIds = new ArrayList<>(pending.keySet());
+        }
+
+        int flushed = 0;
+
+        for (long chestId : chestIds) {
+            try {
+                if (materialise(Items.getItem(chestId)) >= 0)
+                    flushed++;
+            }
+            catch (NoSuchItemException e) {
+                logger.info(String.format("Pending treasure chest (%d) does not exist anymore, dropping its contents.", chestId));
+                discard(chestId);
+            }
+        }
+
+        return flushed;
+    }
+
+    /**
+     * Loads the pending chests from disk, dropping chests that don't exist
+     * anymore, and folds the journal into the .dat file. Must be called
+     * after the items have been loaded.
+     */
+    public static synchronized void load() {
+        pending.clear();
+        closeJournal();
+
+        if (Files.exists(file) && !readSnapshot()) {
+            enabled = false;
+            logger.warning(String.format("Treasure chests are filled when dug up until %s is moved away.", file));
+            return;
+        }
+
+        enabled = true;
+
+        int changes = replay(rolledFile) + replay(journalFile);
+        int dropped = 0;
+
+        for (Iterator<Long> it = pending.keySet().iterator(); it.hasNext(); ) {
+            try {
+                Items.getItem(it.next());
+            }
+            catch (NoSuchItemException e) {
+                it.remove();
+                dropped++;
+            }
+        }
+
+        logger.info(String.format("Loaded %d pending treasure chests and %d journal changes, dropped %d that don't exist anymore.", pending.size(), changes, dropped));
+
+        if (changes > 0 || dropped > 0) {
+            try {
+                writeSnapshot(pending);
+                Files.deleteIfExists(rolledFile);
+                Files.deleteIfExists(journalFile);
+            }
+            catch (Exception e) {
+                logger.log(Level.SEVERE, String.format("Could not save pending treasure chests to %s.", file), e);
+            }
+        }
+    }
+
+    /**
+     * Reads the .dat file into the pending chests.
+     * @return False if the file is of another version, and must be kept.
+     */
+    private static boolean readSnapshot() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt();
+
+            if (version != fileVersion) {
+                logger.warning(String.format("%s has version %d, expected %d. Pending treasure chests are not loaded.", file, version, fileVersion));
+                return false;
+            }
+
+            int chests = in.readInt();
+
+            for (int i = 0; i < chests; i++) {
+                long chestId = in.readLong();
+                pending.put(chestId, RewardManifest.read(in));
+            }
+        }
+        catch (EOFException e) {
+            logger.log(Level.SEVERE, String.format("%s is truncated, only %d pending treasure chests were loaded.", file, pending.size()), e);
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not load pending treasure chests from %s.", file), e);
+        }
+
+        return true;
+    }
+
+    /**
+     * Applies the changes of a journal to the pending chests. A record cut
+     * off by a crash ends the journal.
+     * @param path Journal file.
+     * @return Number of changes applied.
+     */
+    private static int replay(Path path) {
+        if (!Files.exists(path))
+            return 0;
+
+        int changes = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int op = in.read();
+
+                if (op < 0)
+                    break;
+
+                long chestId = in.readLong();
+
+                if (op == ADDED)
+                    pending.put(chestId, RewardManifest.read(in));
+                else if (op == REMOVED)
+                    pending.remove(chestId);
+                else
+                    throw new IOException(String.format("Unknown journal record %d.", op));
+
+                changes++;
+            }
+        }
+        catch (EOFException e) {
+            logger.warning(String.format("%s ends in an incomplete change, it was left out.", path));
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not read pending treasure chest changes from %s, %d were applied.", path, changes), e);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Appends a change to the journal. Only a few bytes for removals, and
+     * the manifest for new chests.
+     */
+    private static void append(byte op, long chestId, RewardManifest manifest) {
+        try {
+            if (journal == null) {
+                Files.createDirectories(journalFile.getParent());
+                journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(journalFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            }
+
+            journal.writeByte(op);
+            journal.writeLong(chestId);
+
+            if (manifest != null)
+                manifest.write(journal);
+
+            journal.flush();
+            journalRecords++;
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not save pending treasure chest change to %s.", journalFile), e);
+
+            // The journal may end in half a record now, start a new one.
+            closeJournal();
+            journalRecords = COMPACT_AFTER;
+        }
+
+        if (journalRecords >= COMPACT_AFTER && !compacting)
+            compact();
+    }
+
+    /**
+     * Starts a new journal, and writes all pending chests to the .dat file
+     * on a background thread. Until that is done, the old journal is kept
+     * next to the new one.
+     */
+    private static void compact() {
+        Map<Long, RewardManifest> snapshot = new LinkedHashMap<>(pending);
+
+        try {
+            closeJournal();
+
+            if (Files.exists(rolledFile)) {
+                // The last compaction failed, keep its changes.
+                if (Files.exists(journalFile)) {
+                    Files.write(rolledFile, Files.readAllBytes(journalFile), StandardOpenOption.APPEND);
+                    Files.delete(journalFile);
+                }
+            }
+            else if (Files.exists(journalFile)) {
+                Files.move(journalFile, rolledFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not start a new journal for pending treasure chests in %s.", journalFile), e);
+            return;
+        }
+
+        journalRecords = 0;
+        compacting = true;
+
+        if (writer == null) {
+            writer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "TreasureHunting chest writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        writer.execute(() -> {
+            long start = System.nanoTime();
+
+            try {
+                writeSnapshot(snapshot);
+                Files.deleteIfExists(rolledFile);
+            }
+            catch (Exception e) {
+                logger.log(Level.SEVERE, String.format("Could not save pending treasure chests to %s.", file), e);
+            }
+            finally {
+                synchronized (PendingChests.class) {
+                    compacting = false;
+                }
+            }
+
+            TreasureMetrics.record("chest.pending.save", System.nanoTime() - start);
+        });
+    }
+
+    private static void closeJournal() {
+        if (journal == null)
+            return;
+
+        try {
+            journal.close();
+        }
+        catch (Exception e) {
+            logger.log(Level.WARNING, String.format("Could not close %s.", journalFile), e);
+        }
+
+        journal = null;
+    }
+
+    /**
+     * Writes pending chests to the .dat file.
+     * @param chests Pending chests to write.
+     */
+    private static void writeSnapshot(Map<Long, RewardManifest> chests) throws IOException {
+        DataFiles.write(file, out -> {
+            out.writeInt(fileVersion);
+            out.writeInt(chests.size());
+
+            for (Map.Entry<Long, RewardManifest> entry : chests.entrySet()) {
+                out.writeLong(entry.getKey());
+                entry.getValue().write(out);
+            }
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package com.pveplands.treasurehunting;
+
+import java.util.Random;
+
+/**
+ * Joint distribution of the vanilla-like rarity roll: a rarity window that
+ * has to be open, followed by the fantastic, supreme, and rare checks in
+ * that order. The distribution is computed once, so a roll is a single
+ * random number and up to three comparisons.
+ *
+ * When the product of all denominators fits into a long, the thresholds are
+ * exact integers and the result matches the separate checks exactly.
+ * Otherwise the table falls back to double precision.
+ */
+public class RarityTable {
+    /**
+     * Rarity of maps found without a player: a window of 1 in 180, then
+     * fantastic if Random.nextFloat() * 10000f &lt;= 1f, which is true for
+     * 1678 of its 2^24 possible values, supreme 1 in 100, and rare 1 in 2.
+     */
+    public static final RarityTable MAP = new RarityTable(
+        new long[] { 1, 1678, 1, 1 },
+        new long[] { 180, 1 << 24, 100, 2 });
+
+    private final long range;
+    private final long[] exact;
+    private final double[] approximate;
+
+    /**
+     * Builds a table from the chance of each check.
+     * @param numerators Numerators of the window, fantastic, supreme, and rare chance.
+     * @param denominators Denominators of the same chances, all greater than zero.
+     */
+    public RarityTable(long[] numerators, long[] denominators) {
+        long[] exact = null;
+        long range = 0;
+
+        try {
+            long window = numerators[0];
+            long fantastic = numerators[1], notFantastic = denominators[1] - numerators[1];
+            long supreme = numerators[2], notSupreme = denominators[2] - numerators[2];
+            long rare = numerators[3];
+
+            range = Math.multiplyExact(Math.multiplyExact(denominators[0], denominators[1]), Math.multiplyExact(denominators[2], denominators[3]));
+
+            long fantastics = Math.multiplyExact(Math.multiplyExact(window, fantastic), Math.multiplyExact(denominators[2], denominators[3]));
+            long supremes = Math.multiplyExact(Math.multiplyExact(window, notFantastic), Math.multiplyExact(supreme, denominators[3]));
+            long rares = Math.multiplyExact(Math.multiplyExact(window, notFantastic), Math.multiplyExact(notSupreme, rare));
+
+            exact = new long[] { fantastics, fantastics + supremes, fantastics + supremes + rares };
+        }
+        catch (ArithmeticException e) {
+            exact = null;
+        }
+
+        this.exact = exact;
+        this.range = exact == null ? 0 : range;
+
+        double window = (double)numerators[0] / denominators[0];
+        double fantastic = (double)numerators[1] / denominators[1];
+        double supreme = (double)numerators[2] / denominators[2];
+        double rare = (double)numerators[3] / denominators[3];
+
+        double fantastics = window * fantastic;
+        double supremes = window * (1d - fantastic) * supreme;
+        double rares = window * (1d - fantastic) * (1d - supreme) * rare;
+
+        this.approximate = new double[] { fantastics, fantastics + supremes, fantastics + supremes + rares };
+    }
+
+    /**
+     * Builds a table from "1 in n" chances, as used in the config file.
+     * @param rareWindow Chance of the rarity window being open.
+     * @param fantasticRarity Chance of fantastic.
+     * @param supremeRarity Chance of supreme.
+     * @param rareRarity Chance of rare.
+     * @return Rarity table.
+     */
+    public static RarityTable fromOneIn(int rareWindow, int fantasticRarity, int supremeRarity, int rareRarity) {
+        return new RarityTable(
+            new long[] { 1, 1, 1, 1 },
+            new long[] { Math.max(1, rareWindow), Math.max(1, fantasticRarity), Math.max(1, supremeRarity), Math.max(1, rareRarity) });
+    }
+
+    /**
+     * Rolls a rarity.
+     * @param guaranteed Minimum rarity to return, from 0 to 3.
+     * @param random Random number generator.
+     * @return Rarity of at least the guaranteed rarity, or 0 none, 1 rare, 2 supreme, 3 fantastic.
+     */
+    public byte roll(int guaranteed, Random random) {
+        int rarity;
+
+        if (exact != null) {
+            long bits, value;
+
+            // Uniform in [0, range), rejecting the incomplete last block.
+            do {
+                bits = random.nextLong() >>> 1;
+                value = bits % range;
+            } while (bits - value + (range - 1) < 0);
+
+            rarity = value < exact[0] ? 3 : value < exact[1] ? 2 : value < exact[2] ? 1 : 0;
+        }
+        else {
+            double value = random.nextDouble();
+            rarity = value < approximate[0] ? 3 : value < approximate[1] ? 2 : value < approximate[2] ? 1 : 0;
+        }
+
+        return (byte)Math.max(guaranteed, rarity);
+    }
+
+    /**
+     * Gets the chance to roll a rarity, without any guaranteed rarity.
+     * @param rarity Rarity from 0 to 3.
+     * @return Probability from 0 to 1.
+     */
+    public double getChance(int rarity) {
+        switch (rarity) {
+            case 3: return approximate[0];
+            case 2: return approximate[1] - approximate[0];
+            case 1: return approximate[2] - approximate[1];
+            case 0: return 1d - approximate[2];
+            default: return 0d;
+        }
+    }
+
+    /**
+     * Whether rolls match the separate checks exactly.
+     * @return True if the table uses integer thresholds.
+     */
+    public boolean isExact() {
+        return exact != null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[none=%.8f, rare=%.8f, supreme=%.8f, fantastic=%.10f, %s]",
+            getChance(0), getChance(1), getChance(2), getChance(3), isExact() ? "exact" : "approximate");
+    }
+}
@@ -0,0 +1,243 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.Items;
+import com.wurmonline.server.Server;
+import com.wurmonline.server.behaviours.Action;
+import com.wurmonline.server.behaviours.ActionEntry;
+import com.wurmonline.server.behaviours.MethodsCreatures;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.endgames.EndGameItems;
+import com.wurmonline.server.items.Item;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.gotti.wurmunlimited.modsupport.actions.ActionPerformer;
+import org.gotti.wurmunlimited.modsupport.actions.ModAction;
+import org.gotti.wurmunlimited.modsupport.actions.ModActions;
+
+/**
+ * Action to read every treasure map in a container with a compass, as a
+ * single timed action. The direction to all marked spots is reported in one
+ * message, and the compass is damaged once for all maps.
+ *
+ * The maps are collected once when the action starts. Maps without a
+ * location yet are resolved one per action tick while reading, maps that
+ * couldn't be resolved by the end are left for later.
+ */
+public class ReadAllTreasuremapsAction implements ActionPerformer, ModAction {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(ReadAllTreasuremapsAction.class));
+
+    /**
+     * Every map after the first adds this much time, in seconds * 10.
+     */
+    private static final int TIME_PER_MAP = 20;
+
+    /**
+     * Longest the action can take, in seconds * 10.
+     */
+    private static final int MAX_TIME = 600;
+
+    private final short actionId;
+    private final ActionEntry actionEntry;
+
+    /**
+     * Maps of actions in progress, dropped with the action.
+     */
+    private final Map<Action, Reading> readings = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Maps collected for one action.
+     */
+    private static class Reading {
+        private final List<Item> maps = new ArrayList<>();
+        private final ArrayDeque<Item> unresolved = new ArrayDeque<>();
+    }
+
+    public ReadAllTreasuremapsAction() {
+        actionId = (short)ModActions.getNextActionId();
+        actionEntry = ActionEntry.createEntry(actionId, "Read all maps", "reading the maps", new int[] { 6, 36 });
+        ModActions.registerAction(actionEntry);
+    }
+
+    @Override
+    public short getActionId() {
+        return actionId;
+    }
+
+    public ActionEntry getActionEntry() {
+        return actionEntry;
+    }
+
+    @Override
+    public boolean action(Action action, Creature performer, Item activated, Item target, short num, float counter) {
+        try {
+            if (target.getOwnerId() != performer.getWurmId()) {
+                performer.getCommunicator().sendNormalServerMessage("You need to have the maps in your inventory.");
+                return true;
+            }
+
+            if (counter == 1.0f) {
+                Reading reading = collectMaps(performer, target);
+                int count = reading.maps.size() + reading.unresolved.size();
+
+                if (count == 0) {
+                    performer.getCommunicator().sendNormalServerMessage(String.format("There are no treasure maps in the %s that you can read.", target.getName()));
+                    return true;
+                }
+
+                readings.put(action, reading);
+                performer.getCommunicator().sendNormalServerMessage(String.format("You roll out %d maps, find your bearings, and try to locate the marked spots.", count));
+
+                // time is seconds * 10, the first map takes as long as reading
+                // the least rare of them alone.
+                int time = 150 - ((int)(activated.getCurrentQualityLevel() / 20) + activated.getRarity() + getLowestRarity(reading)) * 10;
+                time = Math.min(MAX_TIME, time + (count - 1) * TIME_PER_MAP);
+                performer.getCurrentAction().setTimeLeft(time);
+                performer.sendActionControl("Reading the treasuremaps", true, time);
+                Server.getInstance().broadCastAction(performer.getName() + " starts to read a stack of treasuremaps.", performer, 5);
+            }
+            else {
+                int time = performer.getCurrentAction().getTimeLeft();
+                Reading reading = readings.get(action);
+
+                if (reading == null)
+                    return true;
+
+                if (counter * 10f > time) {
+                    readings.remove(action);
+
+                    // Maps may have been moved or dropped while reading.
+                    List<Item> maps = new ArrayList<>();
+
+                    for (Item map : reading.maps)
+                        if (map.getParentId() == target.getWurmId() && map.getOwnerId() == performer.getWurmId())
+                            maps.add(map);
+
+                    if (maps.isEmpty()) {
+                        performer.getCommunicator().sendNormalServerMessage("You don't have any treasure maps left to read.");
+                        return true;
+                    }
+
+                    readMaps(performer, activated, maps);
+
+                    if (!reading.unresolved.isEmpty())
+                        performer.getCommunicator().sendNormalServerMessage(String.format("You can't make any sense of %d of the treasure maps right now, maybe try again later.", reading.unresolved.size()));
+
+                    Server.getInstance().broadCastAction(performer.getName() + " folds up a stack of treasure maps and looks over yonder.", performer, 5);
+
+                    return true;
+                }
+
+                // Finding a location is expensive, at most one per tick.
+                Item map = reading.unresolved.poll();
+
+                if (map != null && Treasuremap.ResolveLocation(map, performer))
+                    reading.maps.add(map);
+            }
+
+            return false;
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, "Reading all treasuremaps action failed.", e);
+
+            return false;
+        }
+    }
+
+    /**
+     * Finds the maps in a container that aren't too weathered to read,
+     * without resolving any locations.
+     * @param performer Player reading the maps.
+     * @param container Container with the maps.
+     * @return Maps with a location, and maps that still need one.
+     */
+    private Reading collectMaps(Creature performer, Item container) {
+        Reading reading = new Reading();
+        int templateId = TreasureHunting.getOptions().getTreasuremapTemplateId();
+
+        for (Item item : container.getItemsAsArray()) {
+            if (item.getTemplateId() != templateId || item.getOwnerId() != performer.getWurmId() || Treasuremap.IsWeathered(item))
+                continue;
+
+            if (Treasuremap.IsResolved(item))
+                reading.maps.add(item);
+            else
+                reading.unresolved.add(item);
+        }
+
+        return reading;
+    }
+
+    private int getLowestRarity(Reading reading) {
+        int rarity = 3;
+
+        for (Item map : reading.maps)
+            rarity = Math.min(rarity, map.getRarity());
+
+        for (Item map : reading.unresolved)
+            rarity = Math.min(rarity, map.getRarity());
+
+        return rarity;
+    }
+
+    /**
+     * Tells the player where all marked spots are, and wears out the compass
+     * and the maps.
+     * @param performer Player reading the maps.
+     * @param compass Compass used to read them.
+     * @param maps Readable maps.
+     */
+    private void readMaps(Creature performer, Item compass, List<Item> maps) {
+        StringBuilder message = new StringBuilder();
+
+        for (Item map : maps) {
+            int xDistance = Math.abs(performer.getTileX() - map.getDataX());
+            int yDistance = Math.abs(performer.getTileY() - map.getDataY());
+            int distance = (int)Math.sqrt(xDistance * xDistance + yDistance * yDistance);
+            int direction = MethodsCreatures.getDir(performer, map.getDataX(), map.getDataY());
+
+            if (message.length() > 0)
+                message.append(' ');
+
+            message.append(String.format("%.2f ql map: ", map.getCurrentQualityLevel())).append(
+                EndGameItems.getDistanceString(
+                    distance,
+                    "marked spot",
+                    MethodsCreatures.getLocationStringFor(performer.getStatus().getRotation(), direction, "you"),
+                    true));
+        }
+
+        performer.getCommunicator().sendNormalServerMessage(message.toString());
+
+        if (TreasureHunting.getOptions().isDamageCompass()) compass.setDamage(compass.getDamage() + 0.0015f * compass.getDamageModifier() * maps.size());
+
+        if (!TreasureHunting.getOptions().isDamageMap())
+            return;
+
+        float totalDamage = 0f;
+        int destroyed = 0;
+
+        for (Item map : maps) {
+            float damage = Treasuremap.GetReadDamage(map.getRarity());
+            totalDamage += damage;
+
+            if (map.setDamage(map.getDamage() + damage, true)) {
+                Items.destroyItem(map.getWurmId());
+                destroyed++;
+            }
+        }
+
+        logger.info(String.format("%s (%d) reading %d treasure maps causing %.6f damage to them, %d were destroyed.",
+            performer.getName(), performer.getWurmId(), maps.size(), totalDamage, destroyed));
+
+        performer.getCommunicator().sendNormalServerMessage("You wear out the treasure maps a bit.");
+
+        if (destroyed > 0)
+            performer.getCommunicator().sendNormalServerMessage(String.format("%d of the treasure maps are in such a bad shape, that you can't make out anything anymore and throw them away.", destroyed));
+    }
+}
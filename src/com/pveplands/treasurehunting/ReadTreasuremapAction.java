@@ -49,16 +49,37 @@ public class ReadTreasuremapAction implements ActionPerformer, ModAction {
                 return true;
             }
             
+            // Reads the open page of an atlas instead of a map item.
+            TreasureAtlas atlas = TreasureAtlas.isAtlas(target) ? TreasureAtlas.get(target) : null;
+            
+            if (atlas != null && !atlas.isUsable()) {
+                performer.getCommunicator().sendNormalServerMessage("The pages of the atlas are stuck together, you can't use it right now.");
+                return true;
+            }
+            
+            if (atlas != null && atlas.size() == 0) {
+                performer.getCommunicator().sendNormalServerMessage("The atlas is empty.");
+                return true;
+            }
+            
+            int page = atlas == null ? 0 : atlas.getPage();
+            
             if (counter == 1.0f) {
-                if (target.getData1() <= 0) {
+                // Checked first, so old weathered maps are never given a location.
+                if (atlas != null ? Treasuremap.IsWeathered(atlas.getData1(page), atlas.getSeed(page)) : Treasuremap.IsWeathered(target)) {
                     performer.getCommunicator().sendNormalServerMessage("This treasuremap is too weathered to read.");
                     return true;
                 }
                 
+                if (atlas != null ? !atlas.resolveLocation(page, performer) : !Treasuremap.ResolveLocation(target, performer)) {
+                    performer.getCommunicator().sendNormalServerMessage("You can't make any sense of this treasuremap right now, maybe try again later.");
+                    return true;
+                }
+                
                 performer.getCommunicator().sendNormalServerMessage("You roll out the map, find your bearings, and try to locate the marked spot.");
                 
                 // time is seconds * 10.
-                int time = 150 - ((int)(activated.getCurrentQualityLevel() / 20) + activated.getRarity() + target.getRarity()) * 10;
+                int time = 150 - ((int)(activated.getCurrentQualityLevel() / 20) + activated.getRarity() + (atlas != null ? atlas.getRarity(page) : target.getRarity())) * 10;
                 performer.getCurrentAction().setTimeLeft(time);
                 performer.sendActionControl("Reading the treasuremap", true, time);
                 Server.getInstance().broadCastAction(performer.getName() + " starts to read a treasuremap.", performer, 5);
@@ -67,10 +88,12 @@ public class ReadTreasuremapAction implements ActionPerformer, ModAction {
                 int time = performer.getCurrentAction().getTimeLeft();
                 
                 if (counter * 10f > time) {
-                    int xDistance = Math.abs(performer.getTileX() - target.getDataX());
-                    int yDistance = Math.abs(performer.getTileY() - target.getDataY());
+                    int mapX = atlas != null ? atlas.getData1(page) >>> 16 : target.getDataX();
+                    int mapY = atlas != null ? atlas.getData1(page) & 0xFFFF : target.getDataY();
+                    int xDistance = Math.abs(performer.getTileX() - mapX);
+                    int yDistance = Math.abs(performer.getTileY() - mapY);
                     int distance = (int)Math.sqrt(xDistance * xDistance + yDistance * yDistance);
-                    int direction = MethodsCreatures.getDir(performer, target.getDataX(), target.getDataY());
+                    int direction = MethodsCreatures.getDir(performer, mapX, mapY);
                     
                     performer.getCommunicator().sendNormalServerMessage(
                         EndGameItems.getDistanceString(
@@ -84,15 +107,20 @@ public class ReadTreasuremapAction implements ActionPerformer, ModAction {
                     if (TreasureHunting.getOptions().isDamageCompass()) activated.setDamage(activated.getDamage() + 0.0015f * activated.getDamageModifier());
                     
                     if (TreasureHunting.getOptions().isDamageMap()) {
-                        float damage = Math.min(100f, Math.max(0.0015f,
-                            new java.util.Random().nextFloat() * (0.0015f * TreasureHunting.getOptions().getDamageMultiplier())));
-                        
-                        // rare, supreme, and fantastic maps take 10%, 20%, and
-                        // 30% less damage respectively.
-                        damage = damage * (1f - target.getRarity() / 10f);
+                        float damage = Treasuremap.GetReadDamage(atlas != null ? atlas.getRarity(page) : target.getRarity());
 
                         performer.getCommunicator().sendNormalServerMessage("You wear out the treasure map a bit.");
                         
+                        if (atlas != null) {
+                            logger.info(String.format("%s (%d) reading %.2f quality treasure map on page %d of atlas (%d) causing %.6f damage to it.",
+                                performer.getName(), performer.getWurmId(), atlas.getCurrentQuality(page), page + 1, target.getWurmId(), damage));
+                            
+                            if (atlas.setDamage(page, atlas.getDamage(page) + damage))
+                                performer.getCommunicator().sendNormalServerMessage("The treasure map is in such a bad shape, that you can't make out anything anymore and tear it out of the atlas.");
+                            
+                            return true;
+                        }
+                        
                         logger.info(String.format("%s (%d) reading %.2f quality treasure map (%d) causing %.6f damage to it.",
                             performer.getName(), performer.getWurmId(), target.getCurrentQualityLevel(), target.getWurmId(), damage));
                         
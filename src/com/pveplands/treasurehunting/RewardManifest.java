@@ -0,0 +1,305 @@
+package com.pveplands.treasurehunting;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compact list of the items a treasure chest should contain, without any of
+ * them existing yet. The planner in Treasurereward fills it, and the
+ * RewardMaterialiser turns it into real items.
+ *
+ * Entries are stored as parallel arrays. A material of 0 means the material
+ * is resolved when the item is created, a weight of 0 keeps the template's
+ * weight, and a parent of -1 puts the item directly into the chest.
+ */
+public class RewardManifest {
+    /**
+     * The entry is given out as an unfinished item (template 179) of its
+     * real template.
+     */
+    public static final byte FLAG_UNFINISHED = 1;
+
+    /**
+     * The entry's weight is capped at 64 times its template's weight.
+     */
+    public static final byte FLAG_CLAMP_WEIGHT = 2;
+
+    private int size = 0;
+    private int[] templateIds;
+    private int[] realTemplateIds;
+    private float[] qualities;
+    private byte[] rarities;
+    private byte[] materials;
+    private int[] weights;
+    private byte[] auxData;
+    private int[] counts;
+    private int[] parents;
+    private byte[] flags;
+
+    public RewardManifest() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty manifest.
+     * @param capacity Number of entries to reserve space for.
+     */
+    public RewardManifest(int capacity) {
+        capacity = Math.max(1, capacity);
+
+        templateIds = new int[capacity];
+        realTemplateIds = new int[capacity];
+        qualities = new float[capacity];
+        rarities = new byte[capacity];
+        materials = new byte[capacity];
+        weights = new int[capacity];
+        auxData = new byte[capacity];
+        counts = new int[capacity];
+        parents = new int[capacity];
+        flags = new byte[capacity];
+    }
+
+    /**
+     * Adds a single item to the manifest.
+     * @param templateId Item template ID of the reward.
+     * @param quality Quality level of the reward.
+     * @param rarity Rarity of the reward.
+     * @return Index of the new entry, to set further properties on.
+     */
+    public int add(int templateId, float quality, byte rarity) {
+        if (size == templateIds.length)
+            grow();
+
+        templateIds[size] = templateId;
+        realTemplateIds[size] = templateId;
+        qualities[size] = quality;
+        rarities[size] = rarity;
+        materials[size] = 0;
+        weights[size] = 0;
+        auxData[size] = 0;
+        counts[size] = 1;
+        parents[size] = -1;
+        flags[size] = 0;
+
+        return size++;
+    }
+
+    /**
+     * Adds an unfinished item to the manifest.
+     * @param realTemplateId Template ID of the item that is unfinished.
+     * @param quality Quality level of the reward.
+     * @param rarity Rarity of the reward.
+     * @return Index of the new entry.
+     */
+    public int addUnfinished(int realTemplateId, float quality, byte rarity) {
+        int index = add(179, quality, rarity);
+        realTemplateIds[index] = realTemplateId;
+        flags[index] |= FLAG_UNFINISHED;
+        weights[index] = 10000;
+
+        return index;
+    }
+
+    /**
+     * Adds a copy of another manifest's entry, without its parent.
+     * @param source Manifest to copy from.
+     * @param index Index of the entry in the source manifest.
+     * @return Index of the new entry.
+     */
+    public int addCopy(RewardManifest source, int index) {
+        int copy = add(source.templateIds[index], source.qualities[index], source.rarities[index]);
+        realTemplateIds[copy] = source.realTemplateIds[index];
+        materials[copy] = source.materials[index];
+        weights[copy] = source.weights[index];
+        auxData[copy] = source.auxData[index];
+        counts[copy] = source.counts[index];
+        flags[copy] = source.flags[index];
+
+        return copy;
+    }
+
+    private void grow() {
+        int capacity = templateIds.length * 2;
+
+        templateIds = Arrays.copyOf(templateIds, capacity);
+        realTemplateIds = Arrays.copyOf(realTemplateIds, capacity);
+        qualities = Arrays.copyOf(qualities, capacity);
+        rarities = Arrays.copyOf(rarities, capacity);
+        materials = Arrays.copyOf(materials, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+        auxData = Arrays.copyOf(auxData, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    /**
+     * Number of entries, an entry may stand for more than one item.
+     * @return Entry count.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Number of items that will be created from this manifest.
+     * @return Sum of all entry counts.
+     */
+    public int getItemCount() {
+        int items = 0;
+
+        for (int i = 0; i < size; i++)
+            items += counts[i];
+
+        return items;
+    }
+
+    public int getTemplateId(int index) {
+        return templateIds[index];
+    }
+
+    /**
+     * Gets the template the entry really is, for unfinished items this is
+     * the template of the finished item.
+     * @param index Entry index.
+     * @return Item template ID.
+     */
+    public int getRealTemplateId(int index) {
+        return realTemplateIds[index];
+    }
+
+    public float getQuality(int index) {
+        return qualities[index];
+    }
+
+    public byte getRarity(int index) {
+        return rarities[index];
+    }
+
+    public byte getMaterial(int index) {
+        return materials[index];
+    }
+
+    public void setMaterial(int index, byte material) {
+        materials[index] = material;
+    }
+
+    public int getWeight(int index) {
+        return weights[index];
+    }
+
+    public void setWeight(int index, int weight) {
+        weights[index] = weight;
+    }
+
+    public byte getAuxData(int index) {
+        return auxData[index];
+    }
+
+    public void setAuxData(int index, byte aux) {
+        auxData[index] = aux;
+    }
+
+    public int getCount(int index) {
+        return counts[index];
+    }
+
+    public void setCount(int index, int count) {
+        counts[index] = count;
+    }
+
+    public int getParent(int index) {
+        return parents[index];
+    }
+
+    /**
+     * Puts an entry into another entry instead of the chest.
+     * @param index Entry index.
+     * @param parent Index of the containing entry, must be lower than index.
+     */
+    public void setParent(int index, int parent) {
+        parents[index] = parent;
+    }
+
+    public boolean hasFlag(int index, byte flag) {
+        return (flags[index] & flag) != 0;
+    }
+
+    public void setFlag(int index, byte flag) {
+        flags[index] |= flag;
+    }
+
+    /**
+     * Writes the manifest in a compact binary form.
+     * @param out Stream to write to.
+     * @throws IOException Writing failed.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(size);
+
+        for (int i = 0; i < size; i++) {
+            out.writeInt(templateIds[i]);
+            out.writeInt(realTemplateIds[i]);
+            out.writeFloat(qualities[i]);
+            out.writeByte(rarities[i]);
+            out.writeByte(materials[i]);
+            out.writeInt(weights[i]);
+            out.writeByte(auxData[i]);
+            out.writeInt(counts[i]);
+            out.writeInt(parents[i]);
+            out.writeByte(flags[i]);
+        }
+    }
+
+    /**
+     * Reads a manifest written by write(DataOutput).
+     * @param in Stream to read from.
+     * @return The manifest.
+     * @throws IOException Reading failed.
+     */
+    public static RewardManifest read(DataInput in) throws IOException {
+        int entries = in.readInt();
+        RewardManifest manifest = new RewardManifest(entries);
+
+        for (int i = 0; i < entries; i++) {
+            int index = manifest.add(in.readInt(), 0f, (byte)0);
+            manifest.realTemplateIds[index] = in.readInt();
+            manifest.qualities[index] = in.readFloat();
+            manifest.rarities[index] = in.readByte();
+            manifest.materials[index] = in.readByte();
+            manifest.weights[index] = in.readInt();
+            manifest.auxData[index] = in.readByte();
+            manifest.counts[index] = in.readInt();
+            manifest.parents[index] = in.readInt();
+            manifest.flags[index] = in.readByte();
+        }
+
+        return manifest;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format("RewardManifest[%d entries, %d items", size, getItemCount()));
+
+        for (int i = 0; i < size; i++) {
+            builder.append(String.format("; %dx %d", counts[i], templateIds[i]));
+
+            if (realTemplateIds[i] != templateIds[i]) builder.append('/').append(realTemplateIds[i]);
+
+            builder.append(String.format(" QL %.2f", qualities[i]));
+
+            if (rarities[i] > 0) builder.append(" R").append(rarities[i]);
+            if (weights[i] > 0) builder.append(' ').append(weights[i]).append('g');
+            if (auxData[i] != 0) builder.append(" aux ").append(auxData[i]);
+            if (parents[i] >= 0) builder.append(" in #").append(parents[i]);
+        }
+
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,121 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.items.AdvancedCreationEntry;
+import com.wurmonline.server.items.Item;
+import com.wurmonline.server.items.ItemFactory;
+import com.wurmonline.server.items.ItemTemplate;
+import com.wurmonline.server.items.ItemTemplateFactory;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Turns a planned RewardManifest into real items inside a container.
+ */
+public class RewardMaterialiser {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(RewardMaterialiser.class));
+    private static final Random random = new Random();
+
+    /**
+     * Creates all items of a manifest and inserts them into a container.
+     * Entries that fail are skipped together with anything planned inside
+     * of them, everything else is still created.
+     *
+     * The container must not be watched by anyone yet: treasure chests are
+     * filled before they are put into the world, or before their first
+     * watcher is added. So no client is updated per item, and the contents
+     * are sent once, when the chest is opened.
+     *
+     * @param container Container to put the items into, e.g. the treasure chest.
+     * @param manifest Planned contents.
+     * @return Number of items that were created.
+     */
+    public static int materialise(Item container, RewardManifest manifest) {
+        Item[] created = new Item[manifest.size()];
+        int items = 0;
+
+        for (int i = 0; i < manifest.size(); i++) {
+            Item parent = manifest.getParent(i) < 0 ? container : created[manifest.getParent(i)];
+
+            // The containing item failed, so this one has nowhere to go.
+            if (parent == null)
+                continue;
+
+            for (int n = 0; n < manifest.getCount(i); n++) {
+                Item item = createItem(manifest, i, parent);
+
+                if (item == null)
+                    break;
+
+                parent.insertItem(item, true);
+                created[i] = item;
+                items++;
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * Creates a single item of a manifest entry, without inserting it.
+     * @param manifest Planned contents.
+     * @param index Index of the entry.
+     * @param parent Item the new item is going to be put into, limits the weight of nested entries.
+     * @return The new item, or null if it could not be created.
+     */
+    public static Item createItem(RewardManifest manifest, int index, Item parent) {
+        ItemTemplate template = ItemTemplateFactory.getInstance().getTemplateOrNull(manifest.getRealTemplateId(index));
+
+        if (template == null) {
+            int templateId = manifest.getRealTemplateId(index);
+            TreasureLog.warnLimited(logger, "template.missing." + templateId, () -> String.format("Reward item template %d does not exist, skipping it.", templateId));
+            return null;
+        }
+
+        try {
+            byte material = manifest.getMaterial(index);
+
+            if (material == 0)
+                material = TreasureHunting.getOptions().getMaterialTable().getMaterial(template.getTemplateId(), random);
+
+            // Passing the material saves the item once, instead of once
+            // more for setMaterial().
+            Item item = material != 0
+                ? ItemFactory.createItem(manifest.getTemplateId(index), manifest.getQuality(index), material, manifest.getRarity(index), null)
+                : ItemFactory.createItem(manifest.getTemplateId(index), manifest.getQuality(index), manifest.getRarity(index), null);
+            boolean unfinished = manifest.hasFlag(index, RewardManifest.FLAG_UNFINISHED);
+
+            if (unfinished) {
+                item.setData(0, 0);
+                AdvancedCreationEntry.setTemplateId(item, template.getTemplateId());
+                // ^ does the two lines below.
+                //item.setData1(templateId << 16);
+                //item.setRealTemplate(templateId);
+                item.setName("unfinished " + template.sizeString + template.getName());
+            }
+
+            int weight = manifest.getWeight(index);
+
+            if (weight > 0) {
+                if (manifest.hasFlag(index, RewardManifest.FLAG_CLAMP_WEIGHT))
+                    weight = Math.min(weight, template.getWeightGrams() * 64);
+
+                if (manifest.getParent(index) >= 0)
+                    weight = Math.min(weight, parent.getContainerVolume()); // container capacity.
+
+                item.setWeight(weight, !unfinished);
+            }
+
+            if (manifest.getAuxData(index) != 0)
+                item.setAuxData(manifest.getAuxData(index));
+
+            return item;
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not create reward item %d (real template %d).",
+                manifest.getTemplateId(index), manifest.getRealTemplateId(index)), e);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,144 @@
+package com.pveplands.treasurehunting;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Ordered list of reward stages that plan a treasure chest. The pipeline is
+ * compiled from the config, stages that can't give anything with the
+ * current config are left out entirely. Every stage is timed into
+ * TreasureMetrics under "stage.name".
+ *
+ * Other mods can add stages with register(String, RewardStage), they run
+ * after the built-in stages, in the order they were registered.
+ */
+public class RewardPipeline {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(RewardPipeline.class));
+    private static final List<Map.Entry<String, RewardStage>> registered = new CopyOnWriteArrayList<>();
+
+    private final String[] names;
+    private final RewardStage[] stages;
+    private final TreasureMetrics.Histogram[] timers;
+
+    private RewardPipeline(List<Map.Entry<String, RewardStage>> list) {
+        names = new String[list.size()];
+        stages = new RewardStage[list.size()];
+        timers = new TreasureMetrics.Histogram[list.size()];
+
+        for (int i = 0; i < list.size(); i++) {
+            names[i] = list.get(i).getKey();
+            stages[i] = list.get(i).getValue();
+            timers[i] = TreasureMetrics.histogram("stage." + names[i]);
+        }
+    }
+
+    /**
+     * Adds a stage to every chest, from now on. Takes effect the next time
+     * the pipeline is compiled, and recompiles the current one.
+     * @param name Name of the stage, for the log and metrics.
+     * @param stage Stage to add.
+     */
+    public static void register(String name, RewardStage stage) {
+        registered.add(new AbstractMap.SimpleImmutableEntry<>(name, stage));
+        logger.info(String.format("Reward stage %s was registered.", name));
+
+        TreasureOptions options = TreasureHunting.getOptions();
+        options.setRewardPipeline(compile(options));
+    }
+
+    /**
+     * Compiles the pipeline for a config. Must be called after the reward
+     * tables were compiled.
+     * @param options Loaded options.
+     * @return Pipeline with all stages that can give rewards.
+     */
+    public static RewardPipeline compile(TreasureOptions options) {
+        List<Map.Entry<String, RewardStage>> list = new ArrayList<>();
+
+        if (options.getBaseMoneyReward() >= 1)
+            add(list, "money", (m, q, k, r) -> Treasurereward.addMoney(m, q, r));
+
+        if (options.getBaseSleepPowderReward() > 0)
+            add(list, "sleepPowder", (m, q, k, r) -> Treasurereward.addSleepPowder(m, q, r));
+
+        if (!options.getMetalTable().isEmpty() && options.getBaseMetalWeight() > 0)
+            add(list, "preciousMetal", (m, q, k, r) -> Treasurereward.addPreciousMetal(m, q, r));
+
+        if (options.getHotaChance() > 0f)
+            add(list, "hotaStatue", (m, q, k, r) -> Treasurereward.addHotaStatue(m, q, r));
+
+        if (!options.getRareTable().isEmpty() && options.getRareChance() > 0f)
+            add(list, "rareItem", (m, q, k, r) -> Treasurereward.addRareItem(m, q, k, r));
+
+        if (!options.getVeryRareTable().isEmpty() && options.getVeryRareChance() > 0)
+            add(list, "veryRareItem", (m, q, k, r) -> Treasurereward.addVeryRareItem(m, q, r));
+
+        if (!options.getExtremelyRareTable().isEmpty() && options.getExtremelyRareChance() > 0)
+            add(list, "extremelyRareItem", (m, q, k, r) -> Treasurereward.addExtremelyRareItem(m, q, r));
+
+        if (!options.getUnfinishedTable().isEmpty() && options.getUnfinishedChance() >= 1)
+            add(list, "unfinishedItem", (m, q, k, r) -> Treasurereward.addUnfinishedItem(m, q, k, r));
+
+        for (AliasTable table : options.getTierTables()) {
+            if (!table.isEmpty()) {
+                add(list, "tierRewards", (m, q, k, r) -> Treasurereward.addTierRewards(m, q, r));
+                break;
+            }
+        }
+
+        if (options.getBaseKarmaReward() >= 1)
+            add(list, "karma", (m, q, k, r) -> Treasurereward.addKarmaReward(m, q, r));
+
+        list.addAll(registered);
+
+        RewardPipeline pipeline = new RewardPipeline(list);
+        logger.info(String.format("Reward stages: %s", pipeline));
+
+        return pipeline;
+    }
+
+    private static void add(List<Map.Entry<String, RewardStage>> list, String name, RewardStage stage) {
+        list.add(new AbstractMap.SimpleImmutableEntry<>(name, stage));
+    }
+
+    /**
+     * Plans the contents of a treasure chest by running all stages.
+     * @param quality Effective quality of the treasure.
+     * @param kingdom Kingdom of the treasure's owner.
+     * @param random Random number generator, one per thread.
+     * @return Manifest of the chest contents, may be empty.
+     */
+    public RewardManifest plan(double quality, byte kingdom, Random random) {
+        RewardManifest manifest = new RewardManifest();
+
+        for (int i = 0; i < stages.length; i++) {
+            long start = System.nanoTime();
+            stages[i].plan(manifest, quality, kingdom, random);
+            timers[i].record(System.nanoTime() - start);
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Names of the stages, in order.
+     * @return Stage names.
+     */
+    public List<String> getStageNames() {
+        List<String> list = new ArrayList<>(names.length);
+        Collections.addAll(list, names);
+
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        return getStageNames().toString();
+    }
+}
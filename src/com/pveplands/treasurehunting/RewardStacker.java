@@ -0,0 +1,106 @@
+package com.pveplands.treasurehunting;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Collapses identical entries of a planned RewardManifest into one entry
+ * with a count, before it is stored or materialised.
+ *
+ * This only makes the manifest smaller, which is what pending chests keep
+ * in memory and write to their journal. Wurm can't hold several coins or
+ * sleep powders in one item, so every counted unit still becomes its own
+ * item when the chest is opened.
+ *
+ * Entries that contain other entries, or are contained in one, are left
+ * alone.
+ */
+public class RewardStacker {
+    /**
+     * Stacks a manifest.
+     * @param manifest Planned contents.
+     * @return New, stacked manifest. The given manifest is not modified.
+     */
+    public static RewardManifest stack(RewardManifest manifest) {
+        boolean[] hasChildren = new boolean[manifest.size()];
+
+        for (int i = 0; i < manifest.size(); i++)
+            if (manifest.getParent(i) >= 0)
+                hasChildren[manifest.getParent(i)] = true;
+
+        RewardManifest stacked = new RewardManifest(manifest.size());
+        Map<Key, Integer> rows = new LinkedHashMap<>();
+        int[] remapped = new int[manifest.size()];
+
+        for (int i = 0; i < manifest.size(); i++) {
+            if (hasChildren[i] || manifest.getParent(i) >= 0) {
+                remapped[i] = stacked.addCopy(manifest, i);
+
+                if (manifest.getParent(i) >= 0)
+                    stacked.setParent(remapped[i], remapped[manifest.getParent(i)]);
+
+                continue;
+            }
+
+            Key key = new Key(manifest, i);
+            Integer row = rows.get(key);
+
+            if (row == null) {
+                row = stacked.addCopy(manifest, i);
+                rows.put(key, row);
+            }
+            else
+                stacked.setCount(row, stacked.getCount(row) + manifest.getCount(i));
+
+            remapped[i] = row;
+        }
+
+        return stacked;
+    }
+
+    /**
+     * Everything that makes two entries the same item.
+     */
+    private static class Key {
+        private final int templateId;
+        private final int realTemplateId;
+        private final float quality;
+        private final byte rarity;
+        private final byte material;
+        private final byte auxData;
+        private final int weight;
+        private final boolean unfinished;
+        private final boolean clamped;
+
+        Key(RewardManifest manifest, int index) {
+            templateId = manifest.getTemplateId(index);
+            realTemplateId = manifest.getRealTemplateId(index);
+            quality = manifest.getQuality(index);
+            rarity = manifest.getRarity(index);
+            material = manifest.getMaterial(index);
+            auxData = manifest.getAuxData(index);
+            weight = manifest.getWeight(index);
+            unfinished = manifest.hasFlag(index, RewardManifest.FLAG_UNFINISHED);
+            clamped = manifest.hasFlag(index, RewardManifest.FLAG_CLAMP_WEIGHT);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key)o;
+
+            return templateId == other.templateId && realTemplateId == other.realTemplateId &&
+                Float.compare(quality, other.quality) == 0 && rarity == other.rarity &&
+                material == other.material && auxData == other.auxData && weight == other.weight &&
+                unfinished == other.unfinished && clamped == other.clamped;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(templateId, realTemplateId, quality, rarity, material, auxData, weight, unfinished, clamped);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.pveplands.treasurehunting;
+
+import java.util.Random;
+
+/**
+ * A single step of planning a treasure chest's contents, e.g. adding the
+ * money reward. Other mods can add their own stages with
+ * RewardPipeline.register(String, RewardStage).
+ */
+@FunctionalInterface
+public interface RewardStage {
+    /**
+     * Adds this stage's rewards to a chest.
+     * @param manifest Manifest of the chest contents planned so far.
+     * @param quality Effective quality of the treasure.
+     * @param kingdom Kingdom of the treasure's owner.
+     * @param random Random number generator, one per thread.
+     */
+    void plan(RewardManifest manifest, double quality, byte kingdom, Random random);
+}
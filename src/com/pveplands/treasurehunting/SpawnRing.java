@@ -0,0 +1,152 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.mesh.Tiles;
+import com.wurmonline.server.Server;
+import com.wurmonline.server.behaviours.Terraforming;
+import com.wurmonline.server.zones.VolaTile;
+import com.wurmonline.server.zones.Zones;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tiles around a treasure chest that ambushing creatures can spawn on. A
+ * tile is passable if it is dry land that is not lava or a cliff, has no
+ * building on it, and isn't steeper than ambushMaxSlope. The tiles are
+ * checked once per dig.
+ *
+ * The ring first covers 2 tiles around the chest. If that has fewer tiles
+ * than creatures, it is widened to 4 tiles. If nothing around the chest is
+ * passable, creatures spawn on the chest's tile, which was just dug up.
+ */
+public class SpawnRing {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(SpawnRing.class));
+
+    private static final int RADIUS = 2;
+    private static final int FALLBACK_RADIUS = 4;
+
+    private final int[] tiles;
+    private int next = 0;
+
+    /**
+     * Creates a ring from tiles that were already found.
+     * @param tiles Tiles as (x << 16) | y, not empty. The array is reordered by pick().
+     */
+    SpawnRing(int[] tiles) {
+        this.tiles = tiles;
+    }
+
+    /**
+     * Finds the passable tiles around a chest.
+     * @param chestX X tile of the chest.
+     * @param chestY Y tile of the chest.
+     * @param creatures Number of creatures that will spawn.
+     * @return Spawn ring, never empty.
+     */
+    public static SpawnRing find(int chestX, int chestY, int creatures) {
+        long start = System.nanoTime();
+        int[] tiles = collect(chestX, chestY, 1, RADIUS, new int[0]);
+
+        if (tiles.length < creatures) {
+            tiles = collect(chestX, chestY, RADIUS + 1, FALLBACK_RADIUS, tiles);
+            TreasureMetrics.count("ambush.ring.fallback");
+        }
+
+        if (tiles.length == 0) {
+            tiles = new int[] { (chestX << 16) | chestY };
+            TreasureMetrics.count("ambush.ring.empty");
+        }
+
+        TreasureMetrics.record("ambush.ring", System.nanoTime() - start);
+
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(String.format("%d passable tiles around the treasure chest at %d, %d for %d creatures.", tiles.length, chestX, chestY, creatures));
+
+        return new SpawnRing(tiles);
+    }
+
+    /**
+     * Adds the passable tiles between two distances from the chest.
+     * @param chestX X tile of the chest.
+     * @param chestY Y tile of the chest.
+     * @param from Smallest distance, in tiles.
+     * @param to Largest distance, in tiles.
+     * @param tiles Tiles found so far.
+     * @return Tiles found so far, and the new ones.
+     */
+    private static int[] collect(int chestX, int chestY, int from, int to, int[] tiles) {
+        int count = tiles.length;
+        tiles = Arrays.copyOf(tiles, count + (to * 2 + 1) * (to * 2 + 1));
+
+        for (int x = chestX - to; x <= chestX + to; x++) {
+            for (int y = chestY - to; y <= chestY + to; y++) {
+                int distance = Math.max(Math.abs(x - chestX), Math.abs(y - chestY));
+
+                if (distance >= from && distance <= to && isPassable(x, y))
+                    tiles[count++] = (x << 16) | y;
+            }
+        }
+
+        return Arrays.copyOf(tiles, count);
+    }
+
+    /**
+     * Checks if a creature can spawn on a surface tile without getting stuck.
+     * @param x X tile.
+     * @param y Y tile.
+     * @return True if the tile is passable.
+     */
+    public static boolean isPassable(int x, int y) {
+        if (x < 1 || y < 1 || x >= Zones.worldTileSizeX - 1 || y >= Zones.worldTileSizeY - 1)
+            return false;
+
+        int tile = Server.surfaceMesh.getTile(x, y);
+        byte type = Tiles.decodeType(tile);
+
+        if (type == Tiles.Tile.TILE_LAVA.id || type == Tiles.Tile.TILE_CLIFF.id || type == Tiles.Tile.TILE_HOLE.id)
+            return false;
+
+        if (Terraforming.isTileUnderWater(tile, x, y, true))
+            return false;
+
+        // Steepness between the tile's corners.
+        int height = Tiles.decodeHeight(tile);
+        int maxHeight = height, minHeight = height;
+
+        for (int corner = 1; corner < 4; corner++) {
+            int cornerHeight = Tiles.decodeHeight(Server.surfaceMesh.getTile(x + (corner & 1), y + (corner >> 1)));
+            maxHeight = Math.max(maxHeight, cornerHeight);
+            minHeight = Math.min(minHeight, cornerHeight);
+        }
+
+        if (maxHeight - minHeight > TreasureHunting.getOptions().getAmbushMaxSlope())
+            return false;
+
+        VolaTile volaTile = Zones.getTileOrNull(x, y, true);
+
+        return volaTile == null || volaTile.getStructure() == null;
+    }
+
+    /**
+     * Picks a tile for the next creature. Every tile is used once before
+     * any tile is used again.
+     * @param random Random number generator to use.
+     * @return Tile as (x << 16) | y.
+     */
+    public int pick(Random random) {
+        if (next == tiles.length)
+            next = 0;
+
+        int i = next + random.nextInt(tiles.length - next);
+        int tile = tiles[i];
+        tiles[i] = tiles[next];
+        tiles[next++] = tile;
+
+        return tile;
+    }
+
+    public int size() {
+        return tiles.length;
+    }
+}
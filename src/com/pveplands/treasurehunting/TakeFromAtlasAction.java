@@ -0,0 +1,80 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.behaviours.Action;
+import com.wurmonline.server.behaviours.ActionEntry;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.items.Item;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import org.gotti.wurmunlimited.modsupport.actions.ActionPerformer;
+import org.gotti.wurmunlimited.modsupport.actions.ModAction;
+import org.gotti.wurmunlimited.modsupport.actions.ModActions;
+
+/**
+ * Takes the treasure map on the open page out of a treasure atlas.
+ */
+public class TakeFromAtlasAction implements ActionPerformer, ModAction {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(TakeFromAtlasAction.class));
+    
+    private short actionId;
+    private ActionEntry actionEntry;
+    
+    public TakeFromAtlasAction() {
+        actionId = (short)ModActions.getNextActionId();
+        actionEntry = ActionEntry.createEntry(actionId, "Take out map", "taking out a map", new int[] { });
+        ModActions.registerAction(actionEntry);
+    }
+    
+    @Override
+    public short getActionId() {
+        return actionId;
+    }
+    
+    public ActionEntry getActionEntry() {
+        return actionEntry;
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer, target);
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer, target);
+    }
+    
+    private boolean performMyAction(Creature performer, Item target) {
+        if (!TreasureAtlas.isAtlas(target))
+            return true;
+        
+        if (target.getOwnerId() != performer.getWurmId()) {
+            performer.getCommunicator().sendNormalServerMessage("You need to have the atlas in your inventory.");
+            return true;
+        }
+        
+        TreasureAtlas atlas = TreasureAtlas.get(target);
+        
+        if (!atlas.isUsable()) {
+            performer.getCommunicator().sendNormalServerMessage("The pages of the atlas are stuck together, you can't use it right now.");
+            return true;
+        }
+        
+        if (atlas.size() == 0) {
+            performer.getCommunicator().sendNormalServerMessage("The atlas is empty.");
+            return true;
+        }
+        
+        try {
+            Item map = atlas.extract(atlas.getPage());
+            performer.getInventory().insertItem(map, true);
+            performer.getCommunicator().sendNormalServerMessage("You take the treasure map out of the atlas.");
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not take a treasure map out of atlas %d.", target.getWurmId()), e);
+        }
+        
+        return true;
+    }
+}
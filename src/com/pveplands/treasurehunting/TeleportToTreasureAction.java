@@ -54,6 +54,11 @@ public class TeleportToTreasureAction implements ActionPerformer, ModAction {
             return true;
         }
         
+        if (!Treasuremap.ResolveLocation(target, performer)) {
+            performer.getCommunicator().sendNormalServerMessage("No treasure location could be found for this map.");
+            return true;
+        }
+        
         // X, Y coordinates are saved in Data1 as (x << 16) | y;
         int x = target.getDataX();
         int y = target.getDataY();
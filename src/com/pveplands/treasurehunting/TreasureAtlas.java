@@ -0,0 +1,426 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.Items;
+import com.wurmonline.server.NoSuchItemException;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.items.Item;
+import com.wurmonline.server.items.ItemFactory;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Treasure maps that were put into an atlas. They are kept as packed records
+ * instead of items, so they don't need database rows and don't decay. Every
+ * atlas has its own file in mods/TreasureHunting/atlases, named after the
+ * atlas' WurmId.
+ *
+ * A record holds Data1 (the treasure location, or where the map was found
+ * while it is unresolved), Data2, the seed, quality, damage and rarity.
+ *
+ * An atlas whose file can't be read, e.g. because it has another version,
+ * can't be used until the file is fixed, so it is never overwritten.
+ */
+public class TreasureAtlas {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(TreasureAtlas.class));
+    private static final Path directory = Paths.get("mods", "TreasureHunting", "atlases");
+    private static final int fileVersion = 1;
+
+    private static final int DATA1 = 0;
+    private static final int DATA2 = 4;
+    private static final int SEED = 8;
+    private static final int QUALITY = 16;
+    private static final int DAMAGE = 20;
+    private static final int RARITY = 24;
+    private static final int RECORD_SIZE = 25;
+
+    private static final Map<Long, TreasureAtlas> atlases = new ConcurrentHashMap<>();
+
+    /**
+     * Atlases that have a file, so destroying any other item doesn't touch
+     * the disk.
+     */
+    private static final Set<Long> stored = ConcurrentHashMap.newKeySet();
+
+    private final long atlasId;
+    private byte[] records = new byte[RECORD_SIZE * 8];
+    private ByteBuffer buffer = ByteBuffer.wrap(records);
+    private int size = 0;
+    private int page = 0;
+    private boolean usable = true;
+
+    private TreasureAtlas(long atlasId) {
+        this.atlasId = atlasId;
+    }
+
+    /**
+     * Gets the maps of an atlas, loading them on first use.
+     * @param atlas Atlas item.
+     * @return The atlas' maps.
+     */
+    public static TreasureAtlas get(Item atlas) {
+        return atlases.computeIfAbsent(atlas.getWurmId(), TreasureAtlas::load);
+    }
+
+    /**
+     * Forgets an atlas and deletes its file, called whenever an item is
+     * destroyed.
+     * @param wurmId WurmId of the destroyed item.
+     */
+    public static void discard(long wurmId) {
+        atlases.remove(wurmId);
+
+        if (!stored.remove(wurmId))
+            return;
+
+        try {
+            Files.deleteIfExists(getFile(wurmId));
+        }
+        catch (Exception e) {
+            logger.log(Level.WARNING, String.format("Could not delete treasure atlas %d.", wurmId), e);
+        }
+    }
+
+    public static boolean isAtlas(Item item) {
+        return item != null && item.getTemplateId() == TreasureHunting.getOptions().getAtlasTemplateId();
+    }
+
+    /**
+     * Deletes the files of atlases that don't exist anymore. Must be called
+     * after the items have been loaded.
+     */
+    public static void cleanUp() {
+        if (!Files.isDirectory(directory))
+            return;
+
+        int kept = 0, deleted = 0;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.dat")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+
+                try {
+                    long atlasId = Long.parseLong(name.substring(0, name.length() - 4));
+                    Items.getItem(atlasId);
+                    stored.add(atlasId);
+                    kept++;
+                }
+                catch (NoSuchItemException | NumberFormatException e) {
+                    Files.delete(file);
+                    deleted++;
+                }
+            }
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not clean up treasure atlases in %s.", directory), e);
+        }
+
+        logger.info(String.format("Found %d treasure atlases, deleted %d that don't exist anymore.", kept, deleted));
+    }
+
+    /**
+     * Whether the atlas' file could be read. Actions must check this before
+     * using the atlas, all changes fail otherwise.
+     * @return False if the atlas must not be used.
+     */
+    public synchronized boolean isUsable() {
+        return usable;
+    }
+
+    /**
+     * Number of maps in the atlas.
+     * @return Map count.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the page that is currently open.
+     * @return Index of the open map, 0 if the atlas is empty.
+     */
+    public synchronized int getPage() {
+        return page;
+    }
+
+    /**
+     * Opens the next page, starting over after the last one.
+     * @return Index of the open map.
+     * @throws IOException The atlas could not be saved.
+     */
+    public synchronized int turnPage() throws IOException {
+        checkUsable();
+
+        page = size == 0 ? 0 : (page + 1) % size;
+        save();
+
+        return page;
+    }
+
+    /**
+     * Puts a treasure map into the atlas. The map item is destroyed before
+     * the record is written, so a failure can lose the map but never
+     * duplicate it.
+     * @param map Treasure map.
+     * @return False if the atlas is full.
+     * @throws IOException The atlas is not usable, or could not be saved.
+     */
+    public synchronized boolean add(Item map) throws IOException {
+        checkUsable();
+
+        if (size >= TreasureHunting.getOptions().getAtlasCapacity())
+            return false;
+
+        int data1 = map.getData1(), data2 = map.getData2();
+        long seed = TreasureSeed.getSeed(map);
+        float quality = map.getQualityLevel(), damage = map.getDamage();
+        byte rarity = map.getRarity();
+
+        Items.destroyItem(map.getWurmId());
+
+        if ((size + 1) * RECORD_SIZE > records.length) {
+            records = Arrays.copyOf(records, records.length * 2);
+            buffer = ByteBuffer.wrap(records);
+        }
+
+        int offset = size * RECORD_SIZE;
+        buffer.putInt(offset + DATA1, data1);
+        buffer.putInt(offset + DATA2, data2);
+        buffer.putLong(offset + SEED, seed);
+        buffer.putFloat(offset + QUALITY, quality);
+        buffer.putFloat(offset + DAMAGE, damage);
+        buffer.put(offset + RARITY, rarity);
+
+        page = size++;
+        save();
+
+        return true;
+    }
+
+    /**
+     * Takes a map out of the atlas as a treasure map item again. The record
+     * is removed and saved before the item is created, so a failure can lose
+     * the map but never duplicate it.
+     * @param index Index of the map.
+     * @return New treasure map item, not inserted anywhere yet.
+     * @throws Exception The atlas could not be saved, or the item could not
+     * be created.
+     */
+    public synchronized Item extract(int index) throws Exception {
+        checkUsable();
+
+        int data1 = getData1(index), data2 = buffer.getInt(index * RECORD_SIZE + DATA2);
+        long seed = getSeed(index);
+        float quality = getQuality(index), damage = getDamage(index);
+        byte rarity = getRarity(index);
+        byte[] record = Arrays.copyOfRange(records, index * RECORD_SIZE, (index + 1) * RECORD_SIZE);
+        int openPage = page;
+
+        try {
+            remove(index);
+        }
+        catch (IOException e) {
+            // Still on disk, so keep it in the atlas as well.
+            System.arraycopy(records, index * RECORD_SIZE, records, (index + 1) * RECORD_SIZE, (size - index) * RECORD_SIZE);
+            System.arraycopy(record, 0, records, index * RECORD_SIZE, RECORD_SIZE);
+            size++;
+            page = openPage;
+            throw e;
+        }
+
+        Item map = ItemFactory.createItem(TreasureHunting.getOptions().getTreasuremapTemplateId(), quality, rarity, null);
+
+        map.setData1(data1);
+        map.setData2(data2);
+        TreasureSeed.setSeed(map, seed);
+        map.setDamage(damage);
+
+        return map;
+    }
+
+    /**
+     * Removes a map from the atlas without creating an item.
+     * @param index Index of the map.
+     * @throws IOException The atlas is not usable, or could not be saved.
+     */
+    public synchronized void remove(int index) throws IOException {
+        checkUsable();
+
+        int offset = index * RECORD_SIZE;
+
+        System.arraycopy(records, offset + RECORD_SIZE, records, offset, (size - index - 1) * RECORD_SIZE);
+        size--;
+
+        if (page >= size)
+            page = 0;
+
+        save();
+    }
+
+    public synchronized int getData1(int index) {
+        return buffer.getInt(index * RECORD_SIZE + DATA1);
+    }
+
+    /**
+     * Sets the treasure location of a map, once it has been resolved.
+     * @param index Index of the map.
+     * @param data1 Location as (x << 16) | y.
+     * @throws IOException The atlas is not usable, or could not be saved.
+     */
+    public synchronized void setData1(int index, int data1) throws IOException {
+        checkUsable();
+        buffer.putInt(index * RECORD_SIZE + DATA1, data1);
+        save();
+    }
+
+    /**
+     * Finds the treasure location of a map that was put into the atlas
+     * before it was used.
+     * @param index Index of the map.
+     * @param performer Creature using the map, may be NULL.
+     * @return True if the map has a location now.
+     * @throws IOException The atlas is not usable, or could not be saved.
+     */
+    public synchronized boolean resolveLocation(int index, Creature performer) throws IOException {
+        if (Treasuremap.IsResolved(getData1(index), getSeed(index)))
+            return true;
+
+        int location = Treasuremap.ResolveLocation(getData1(index), getSeed(index), performer);
+
+        if (location < 0)
+            return false;
+
+        setData1(index, location);
+
+        return true;
+    }
+
+    public synchronized long getSeed(int index) {
+        return buffer.getLong(index * RECORD_SIZE + SEED);
+    }
+
+    public synchronized float getQuality(int index) {
+        return buffer.getFloat(index * RECORD_SIZE + QUALITY);
+    }
+
+    public synchronized float getDamage(int index) {
+        return buffer.getFloat(index * RECORD_SIZE + DAMAGE);
+    }
+
+    /**
+     * Damages a map in the atlas, removing it if it falls apart.
+     * @param index Index of the map.
+     * @param damage New damage.
+     * @return True if the map was destroyed.
+     * @throws IOException The atlas is not usable, or could not be saved.
+     */
+    public synchronized boolean setDamage(int index, float damage) throws IOException {
+        checkUsable();
+
+        if (damage >= 100f) {
+            remove(index);
+            return true;
+        }
+
+        buffer.putFloat(index * RECORD_SIZE + DAMAGE, damage);
+        save();
+
+        return false;
+    }
+
+    public synchronized byte getRarity(int index) {
+        return buffer.get(index * RECORD_SIZE + RARITY);
+    }
+
+    /**
+     * Quality of a map as it is shown on the item, reduced by its damage.
+     * @param index Index of the map.
+     * @return Current quality level.
+     */
+    public synchronized float getCurrentQuality(int index) {
+        return getQuality(index) * (100f - getDamage(index)) / 100f;
+    }
+
+    /**
+     * Describes the open page for the player.
+     * @return Description of the open map, or that the atlas is empty.
+     */
+    public synchronized String describePage() {
+        if (size == 0)
+            return "The atlas is empty.";
+
+        String[] rarities = { "", "rare ", "supreme ", "fantastic " };
+        byte rarity = getRarity(page);
+
+        return String.format("Page %d of %d shows a %s%.2f quality treasure map, %.2f damaged.",
+            page + 1, size, rarities[Math.max(0, Math.min(3, rarity))], getCurrentQuality(page), getDamage(page));
+    }
+
+    private static Path getFile(long atlasId) {
+        return directory.resolve(atlasId + ".dat");
+    }
+
+    private static TreasureAtlas load(long atlasId) {
+        TreasureAtlas atlas = new TreasureAtlas(atlasId);
+        Path file = getFile(atlasId);
+
+        if (!Files.exists(file))
+            return atlas;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt();
+
+            if (version != fileVersion) {
+                logger.warning(String.format("%s has version %d, expected %d. The atlas can't be used.", file, version, fileVersion));
+                atlas.usable = false;
+                return atlas;
+            }
+
+            int size = in.readInt();
+            atlas.page = in.readInt();
+            atlas.records = new byte[Math.max(RECORD_SIZE * 8, size * RECORD_SIZE)];
+            atlas.buffer = ByteBuffer.wrap(atlas.records);
+            in.readFully(atlas.records, 0, size * RECORD_SIZE);
+            atlas.size = size;
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not load treasure atlas from %s, it can't be used.", file), e);
+            atlas.usable = false;
+        }
+
+        return atlas;
+    }
+
+    private void checkUsable() throws IOException {
+        if (!usable)
+            throw new IOException(String.format("Treasure atlas %d could not be loaded and can't be changed.", atlasId));
+    }
+
+    /**
+     * Writes the atlas to disk.
+     * @throws IOException The atlas is not usable, or could not be saved.
+     */
+    private void save() throws IOException {
+        checkUsable();
+
+        DataFiles.write(getFile(atlasId), out -> {
+            out.writeInt(fileVersion);
+            out.writeInt(size);
+            out.writeInt(page);
+            out.write(records, 0, size * RECORD_SIZE);
+        });
+
+        stored.add(atlasId);
+    }
+}
@@ -5,14 +5,38 @@ import com.wurmonline.server.creatures.Creature;
 import com.wurmonline.server.items.Item;
 import com.wurmonline.server.items.ItemList;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import javax.annotation.Nonnull;
 import org.gotti.wurmunlimited.modsupport.actions.BehaviourProvider;
 import org.gotti.wurmunlimited.modsupport.actions.ModAction;
 
 public class TreasureBehaviour implements BehaviourProvider, ModAction {
+    // Staff menus: none, then power 2 to 4 and 5 with tile and map bits.
+    private static final int STAFF_MENUS = 9;
+    
+    // Contexts: nothing, unload from a chest, the chest itself, a container
+    // with a compass, or a map or atlas plus a tool.
+    private static final int NONE = 0;
+    private static final int UNLOAD = 1;
+    private static final int CHEST = 2;
+    private static final int READ_ALL = 3;
+    private static final int MAP = 4;
+    private static final int ATLAS = 8;
+    private static final int CONTEXTS = 12;
+    
+    private static final int READ = 1;
+    private static final int DIG = 2;
+    private static final int ADD = 3;
+    
+    private final List<ActionEntry>[][] menus;
+    
+    /**
+     * Must be created after all actions have been registered, the menus
+     * are built from their action entries once.
+     */
     public TreasureBehaviour() {
+        menus = buildMenus();
     }
     
     @Override
@@ -30,59 +54,173 @@ public class TreasureBehaviour implements BehaviourProvider, ModAction {
         return getMyBehaviours(performer, activated, null, tilex, tiley, onSurface, tile);
     }
     
+    /**
+     * Finds the precomputed menu for a right-click. Ordinary players
+     * right-clicking anything that isn't a treasure map, atlas or chest
+     * content get null, without allocating anything.
+     */
     private List<ActionEntry> getMyBehaviours(Creature performer, Item activated, Item target, int tilex, int tiley, boolean onSurface, int tile) {
-        List<ActionEntry> list = new ArrayList<>();
+        int context = getContext(activated, target);
+        
+        if (context == NONE && performer.getPower() <= 1)
+            return null;
+        
+        return menus[getStaffMenu(performer, target, tile)][context];
+    }
+    
+    /**
+     * Staff menu index: 0 for players, otherwise by power, whether a tile
+     * or a treasure map was right-clicked.
+     */
+    private int getStaffMenu(Creature performer, Item target, int tile) {
+        int power = performer.getPower();
+        
+        if (power <= 1)
+            return 0;
+        
+        boolean map = target != null && target.getTemplateId() == TreasureHunting.getOptions().getTreasuremapTemplateId();
+        
+        return 1 + (power > 4 ? 4 : 0) + (tile != 0 ? 2 : 0) + (map ? 1 : 0);
+    }
+    
+    /**
+     * Context index of the right-clicked item and the activated tool.
+     */
+    private int getContext(Item activated, Item target) {
+        if (target == null)
+            return NONE;
+        
         TreasureOptions options = TreasureHunting.getOptions();
-
-        short menuItems = 0;
+        int templateId = target.getTemplateId();
         
-        if (performer.getPower() > 1) {
-            menuItems--;
-            list.add(options.getCreatemapAction().getActionEntry());
-            
-            if (tile != 0) {
-                menuItems -= 2;
-                list.add(options.getCreatehereAction().getActionEntry());
-                list.add(options.getChestAction().getActionEntry());
-            }
+        if (templateId == options.getTreasuremapTemplateId())
+            return MAP + getTool(activated, target, options);
+        
+        if (templateId == options.getAtlasTemplateId())
+            return ATLAS + getTool(activated, null, options);
+        
+        if (templateId == ItemList.treasureChest)
+            return CHEST;
+        
+        if (target.getTemplate().isTransportable() && target.getParentId() != -10) {
+            Item parent = target.getParentOrNull();
             
-            if (target != null && target.getTemplateId() == TreasureHunting.getOptions().getTreasuremapTemplateId()) {
-                menuItems--;
-                list.add(options.getTeleportAction().getActionEntry());
-            }
+            if (parent != null && parent.getTemplateId() == ItemList.treasureChest)
+                return UNLOAD;
+        }
+        
+        if (activated != null && activated.getTemplateId() == ItemList.compass && target.isHollow())
+            return READ_ALL;
+        
+        return NONE;
+    }
+    
+    /**
+     * Tool offset: 1 for a compass, 2 for a digging tool, 3 for another
+     * treasure map, 0 for anything else.
+     */
+    private int getTool(Item activated, Item map, TreasureOptions options) {
+        if (activated == null)
+            return 0;
+        
+        int templateId = activated.getTemplateId();
+        
+        if (templateId == ItemList.compass)
+            return READ;
+        else if (templateId == ItemList.shovel || templateId == ItemList.pickAxe)
+            return DIG;
+        else if (templateId == options.getTreasuremapTemplateId() && (map == null || activated.getWurmId() != map.getWurmId()))
+            return ADD;
+        
+        return 0;
+    }
+    
+    /**
+     * Builds every combination of staff menu and context menu. The staff
+     * menu comes first, under its own submenu header.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<ActionEntry>[][] buildMenus() {
+        List<ActionEntry>[][] menus = new List[STAFF_MENUS][CONTEXTS];
+        
+        for (int staff = 0; staff < STAFF_MENUS; staff++) {
+            List<ActionEntry> staffMenu = buildStaffMenu(staff);
             
-            if (performer.getPower() > 4) {
-                menuItems--;
-                list.add(options.getReloadAction().getActionEntry());
+            for (int context = 0; context < CONTEXTS; context++) {
+                List<ActionEntry> list = new ArrayList<>(staffMenu);
+                list.addAll(buildContextMenu(context));
+                
+                menus[staff][context] = list.isEmpty() ? null : Collections.unmodifiableList(list);
             }
         }
         
-        if (menuItems < 0)
-            list.add(0, new ActionEntry(menuItems, "Treasuremap", "Treasuremap"));
+        return menus;
+    }
+    
+    private static List<ActionEntry> buildStaffMenu(int staff) {
+        TreasureOptions options = TreasureHunting.getOptions();
+        List<ActionEntry> list = new ArrayList<>();
         
-        if (target != null && target.getTemplateId() == TreasureHunting.getOptions().getTreasuremapTemplateId()) {
-            if (activated != null) {
-                if (activated.getTemplateId() == ItemList.compass)
-                    list.add(options.getReadmapAction().getActionEntry());
-                else if (activated.getTemplateId() == ItemList.shovel || activated.getTemplateId() == ItemList.pickAxe)
-                    list.add(options.getDigAction().getActionEntry());
-            }
+        if (staff == 0)
+            return list;
+        
+        list.add(options.getCreatemapAction().getActionEntry());
+        list.add(options.getExpectedAction().getActionEntry());
+        list.add(options.getMetricsAction().getActionEntry());
+        
+        if (((staff - 1) & 2) != 0) {
+            list.add(options.getCreatehereAction().getActionEntry());
+            list.add(options.getChestAction().getActionEntry());
         }
-        else if (target != null && target.getTemplate().isTransportable() && target.getParentId() != -10) {
-            Item parent = target.getParentOrNull();
-            
-            if (parent != null && parent.getTemplateId() == ItemList.treasureChest)
-                list.add(options.getUnloadAction().getActionEntry());
+        
+        if (((staff - 1) & 1) != 0)
+            list.add(options.getTeleportAction().getActionEntry());
+        
+        if (((staff - 1) & 4) != 0) {
+            list.add(options.getReloadAction().getActionEntry());
+            list.add(options.getFlushAction().getActionEntry());
         }
         
-        if (list.isEmpty())
-            list = null;
+        list.add(0, new ActionEntry((short)-list.size(), "Treasuremap", "Treasuremap"));
+        
+        return list;
+    }
+    
+    private static List<ActionEntry> buildContextMenu(int context) {
+        TreasureOptions options = TreasureHunting.getOptions();
+        List<ActionEntry> list = new ArrayList<>();
+        
+        if (context == UNLOAD) {
+            list.add(options.getUnloadAction().getActionEntry());
+        }
+        else if (context == CHEST) {
+            list.add(options.getUnloadAllAction().getActionEntry());
+        }
+        else if (context == READ_ALL) {
+            list.add(options.getReadAllAction().getActionEntry());
+        }
+        else if (context >= MAP) {
+            int tool = context >= ATLAS ? context - ATLAS : context - MAP;
+            
+            if (tool == READ)
+                list.add(options.getReadmapAction().getActionEntry());
+            else if (tool == DIG)
+                list.add(options.getDigAction().getActionEntry());
+            else if (tool == ADD)
+                list.add(options.getAtlasAddAction().getActionEntry());
+            
+            if (context >= ATLAS) {
+                list.add(options.getAtlasPageAction().getActionEntry());
+                list.add(options.getAtlasTakeAction().getActionEntry());
+            }
+        }
         
         return list;
     }
     
     private boolean atTreasureLocation(Creature performer, Item map) {
-        return performer.getTileX() == map.getDataX() &&
+        return Treasuremap.IsResolved(map) &&
+            performer.getTileX() == map.getDataX() &&
             performer.getTileY() == map.getDataY();
     }
 }
@@ -7,6 +7,7 @@ import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javassist.CannotCompileException;
+import javassist.CtClass;
 import javassist.CtMethod;
 import javassist.expr.ExprEditor;
 import javassist.expr.MethodCall;
@@ -15,6 +16,7 @@ import org.gotti.wurmunlimited.modloader.interfaces.Configurable;
 import org.gotti.wurmunlimited.modloader.interfaces.Initable;
 import org.gotti.wurmunlimited.modloader.interfaces.ItemTemplatesCreatedListener;
 import org.gotti.wurmunlimited.modloader.interfaces.PreInitable;
+import org.gotti.wurmunlimited.modloader.interfaces.ServerPollListener;
 import org.gotti.wurmunlimited.modloader.interfaces.ServerStartedListener;
 import org.gotti.wurmunlimited.modloader.interfaces.WurmServerMod;
 import org.gotti.wurmunlimited.modsupport.actions.ModActions;
@@ -32,7 +34,7 @@ import org.gotti.wurmunlimited.modsupport.actions.ModActions;
  * This mod was brought to you by http://pveplands.com
  * Forum post: 
  */
-public class TreasureHunting implements WurmServerMod, Configurable, Initable, PreInitable, ItemTemplatesCreatedListener, ServerStartedListener {
+public class TreasureHunting implements WurmServerMod, Configurable, Initable, PreInitable, ItemTemplatesCreatedListener, ServerStartedListener, ServerPollListener {
     private static final Logger logger = Logger.getLogger(getLoggerName(TreasureHunting.class));
     public static String getLoggerName(Class c) { return String.format("%s (v%s)", c.getName(), c.getPackage().getImplementationVersion()); }
     
@@ -52,6 +54,8 @@ public class TreasureHunting implements WurmServerMod, Configurable, Initable, P
         AddMethodCallsMining();
         AddMethodCallsFishing();
         AddMethodCallsHunting();
+        AddMethodCallsChests();
+        AddMethodCallsItemDestroyed();
         
         ModActions.init();
     }
@@ -74,21 +78,89 @@ public class TreasureHunting implements WurmServerMod, Configurable, Initable, P
         catch (Exception e) {
             logger.log(Level.SEVERE, "Could not create treasure map item.", e);
         }
+        
+        try {
+            ItemTemplateCreator.createItemTemplate(options.getAtlasTemplateId(), "treasure atlas", "treasure atlases", "excellent", "good", "ok", "poor",
+                "A thick leather bound book to keep treasure maps in. Put maps into it, turn its pages, or use a compass or shovel on the open page.",
+                new short[] { 48, 157, 187 }, (short)640, (short)1, 0, 9072000L, 10, 20, 5, -10,
+                MiscConstants.EMPTY_BYTE_PRIMITIVE_ARRAY, "model.resource.sheet.", 5f, 1000, (byte)33, 5000, true);
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, "Could not create treasure atlas item.", e);
+        }
     }
 
     @Override
     public void onServerStarted() {
+        options.setTemplatesLoaded(true);
+        options.resolveTemplates();
+        PendingChests.load();
+        TreasureAtlas.cleanUp();
+        AmbushGuards.load();
+        
         ModActions.registerAction(options.setCreatemapAction(new CreateRandomTreasuremapAction()));
         ModActions.registerAction(options.setCreatehereAction(new CreateTreasuremapHereAction()));
         ModActions.registerAction(options.setTeleportAction(new TeleportToTreasureAction()));
         ModActions.registerAction(options.setReloadAction(new ReloadConfigAction()));
         ModActions.registerAction(options.setReadmapAction(new ReadTreasuremapAction()));
+        ModActions.registerAction(options.setReadAllAction(new ReadAllTreasuremapsAction()));
         ModActions.registerAction(options.setDigAction(new DigUpTreasureAction()));
         ModActions.registerAction(options.setUnloadAction(new UnloadFromTreasureAction()));
+        ModActions.registerAction(options.setUnloadAllAction(new UnloadAllFromTreasureAction()));
         ModActions.registerAction(options.setChestAction(new SpawnTreasurechestAction()));
+        ModActions.registerAction(options.setFlushAction(new FlushChestsAction()));
+        ModActions.registerAction(options.setExpectedAction(new ExpectedRewardsAction()));
+        ModActions.registerAction(options.setMetricsAction(new MetricsAction()));
+        ModActions.registerAction(options.setAtlasAddAction(new AddToAtlasAction()));
+        ModActions.registerAction(options.setAtlasTakeAction(new TakeFromAtlasAction()));
+        ModActions.registerAction(options.setAtlasPageAction(new TurnAtlasPageAction()));
         ModActions.registerAction(options.setBehaviours(new TreasureBehaviour()));
     }
     
+    @Override
+    public void onServerPoll() {
+        AmbushScheduler.poll();
+        AmbushGuards.poll();
+    }
+    
+    /**
+     * Injects a call whenever a treasure chest gets a new watcher, i.e. its
+     * container window is opened. This creates the chest's contents if they
+     * were not created yet, before the window is filled.
+     */
+    private void AddMethodCallsChests() {
+        try {
+            HookManager.getInstance().getClassPool().get("com.wurmonline.server.items.Item")
+                .getMethod("addWatcher", "(JLcom/wurmonline/server/creatures/Creature;)V")
+                .insertBefore("{ if (this.getTemplateId() == 995) com.pveplands.treasurehunting.PendingChests.materialise(this); }");
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, "Can't add method calls to opening treasure chests.", e);
+        }
+    }
+    
+    /**
+     * Injects a call whenever an item is destroyed, so treasure chests that
+     * decay or are destroyed unopened don't keep their pending contents, and
+     * destroyed atlases are dropped from memory and disk.
+     */
+    private void AddMethodCallsItemDestroyed() {
+        try {
+            for (CtMethod method : HookManager.getInstance().getClassPool().get("com.wurmonline.server.Items").getDeclaredMethods()) {
+                if (!method.getName().equals("destroyItem"))
+                    continue;
+                
+                CtClass[] parameters = method.getParameterTypes();
+                
+                if (parameters.length > 0 && parameters[0] == CtClass.longType)
+                    method.insertBefore("{ com.pveplands.treasurehunting.PendingChests.discard($1); com.pveplands.treasurehunting.TreasureAtlas.discard($1); }");
+            }
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, "Can't add method calls to destroying items.", e);
+        }
+    }
+    
     /**
      * Injects calls to our mod whenever a creature dies and there were
      * attackers (i.e. it did not die of old age). This will create treasure
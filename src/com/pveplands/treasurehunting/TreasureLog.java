@@ -0,0 +1,95 @@
+package com.pveplands.treasurehunting;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logging setup of the mod, and rate limited warnings.
+ *
+ * All loggers of the mod are children of "com.pveplands.treasurehunting",
+ * so the level set in the config applies to all of them. Messages below
+ * that level are not formatted at all. Hot paths check
+ * logger.isLoggable(Level.FINE) before building their message.
+ */
+public class TreasureLog {
+    public static final String ROOT = "com.pveplands.treasurehunting";
+
+    // Strong reference, the LogManager only keeps loggers weakly.
+    private static final Logger root = Logger.getLogger(ROOT);
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(TreasureLog.class));
+    private static final Map<String, long[]> warnings = new ConcurrentHashMap<>();
+
+    private static AsyncLogHandler asyncHandler;
+    private static long warningInterval = 60000L;
+
+    /**
+     * Applies the logging options, may be called again on a reload.
+     * @param options Loaded options.
+     */
+    public static synchronized void configure(TreasureOptions options) {
+        root.setLevel(options.getLogLevel());
+        warningInterval = options.getWarningInterval() * 1000L;
+
+        if (options.isAsyncLogging() && asyncHandler == null) {
+            Handler[] targets = Logger.getLogger("").getHandlers();
+
+            if (targets.length == 0)
+                return;
+
+            asyncHandler = new AsyncLogHandler(options.getLogQueueSize(), targets);
+            root.addHandler(asyncHandler);
+            root.setUseParentHandlers(false);
+            logger.info(String.format("Logging through a background writer, up to %d queued messages.", options.getLogQueueSize()));
+        }
+        else if (!options.isAsyncLogging() && asyncHandler != null) {
+            root.setUseParentHandlers(true);
+            root.removeHandler(asyncHandler);
+            asyncHandler.close();
+            asyncHandler = null;
+            logger.info("Logging directly to the server log.");
+        }
+    }
+
+    /**
+     * Logs a warning at most once per interval for the same key. The next
+     * warning that gets through says how many were left out.
+     * @param log Logger to write to.
+     * @param key Identifies warnings that are the same, e.g. "tier.3.empty".
+     * @param message Builds the message, only called if it is logged.
+     */
+    public static void warnLimited(Logger log, String key, Supplier<String> message) {
+        if (!log.isLoggable(Level.WARNING))
+            return;
+
+        long now = System.currentTimeMillis();
+        long[] state = warnings.computeIfAbsent(key, k -> new long[] { Long.MIN_VALUE, 0 });
+        long suppressed;
+
+        synchronized (state) {
+            if (state[0] != Long.MIN_VALUE && now - state[0] < warningInterval) {
+                state[1]++;
+                return;
+            }
+
+            suppressed = state[1];
+            state[0] = now;
+            state[1] = 0;
+        }
+
+        if (suppressed > 0)
+            log.warning(String.format("%s (%d more like this were not logged)", message.get(), suppressed));
+        else
+            log.warning(message.get());
+    }
+
+    /**
+     * Forgets all rate limited warnings, e.g. after the config changed.
+     */
+    public static void resetWarnings() {
+        warnings.clear();
+    }
+}
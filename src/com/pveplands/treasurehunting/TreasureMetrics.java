@@ -0,0 +1,138 @@
+package com.pveplands.treasurehunting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lightweight timing histograms and counters, e.g. for the reward stages.
+ * Recording is lock free, so it can be called on the server tick.
+ */
+public class TreasureMetrics {
+    private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Histogram of durations in power of two buckets of nanoseconds.
+     */
+    public static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+
+        public void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos) - (nanos == 0 ? 0 : 1));
+            count.increment();
+            total.add(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanNanos() {
+            long n = count.sum();
+
+            return n == 0 ? 0d : (double)total.sum() / n;
+        }
+
+        /**
+         * Gets an upper bound of a percentile, rounded up to the next power of two.
+         * @param fraction From 0 to 1.
+         * @return Nanoseconds.
+         */
+        public long getPercentileNanos(double fraction) {
+            long wanted = (long)Math.ceil(fraction * count.sum());
+            long seen = 0;
+
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+
+                if (seen >= wanted && seen > 0)
+                    return i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d times, mean %.1f us, p50 < %.1f us, p99 < %.1f us",
+                getCount(), getMeanNanos() / 1000d, getPercentileNanos(0.5d) / 1000d, getPercentileNanos(0.99d) / 1000d);
+        }
+    }
+
+    /**
+     * Gets or creates a histogram.
+     * @param name Name of the histogram.
+     * @return Histogram, never null.
+     */
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Records a duration.
+     * @param name Name of the histogram.
+     * @param nanos Duration in nanoseconds.
+     */
+    public static void record(String name, long nanos) {
+        histogram(name).record(nanos);
+    }
+
+    /**
+     * Increments a counter.
+     * @param name Name of the counter.
+     */
+    public static void count(String name) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Adds to a counter.
+     * @param name Name of the counter.
+     * @param value Amount to add.
+     */
+    public static void add(String name, long value) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Gets the value of a counter.
+     * @param name Name of the counter.
+     * @return Value, 0 if it was never incremented.
+     */
+    public static long getCount(String name) {
+        LongAdder counter = counters.get(name);
+
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Clears all histograms and counters.
+     */
+    public static void reset() {
+        histograms.clear();
+        counters.clear();
+    }
+
+    /**
+     * Human readable lines of all histograms and counters.
+     * @return One line per histogram or counter.
+     */
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet())
+            lines.add(String.format("%s: %s", entry.getKey(), entry.getValue()));
+
+        new ConcurrentSkipListMap<>(counters).forEach((name, counter) -> lines.add(String.format("%s: %d", name, counter.sum())));
+
+        return lines;
+    }
+}
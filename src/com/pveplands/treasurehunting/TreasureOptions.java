@@ -1,7 +1,12 @@
 package com.pveplands.treasurehunting;
 
 import com.wurmonline.server.MiscConstants;
+import com.wurmonline.server.items.ItemTemplateFactory;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -12,7 +17,15 @@ import java.util.logging.Logger;
 public class TreasureOptions {
     private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(TreasureOptions.class));
     
+    /**
+     * Highest spawn weight of a tier. The ambush planner keeps two ints per
+     * tier and point of weight, so a typo like 1000000000 must not reach it.
+     */
+    private static final int MAX_SPAWN_WEIGHT = 10000;
+    
     private int treasuremapTemplateId = 4200;
+    private int atlasTemplateId = 4201;
+    private int atlasCapacity = 500;
     
     private boolean extraWarning = false;
     private boolean extraSwirl = false;
@@ -40,6 +53,19 @@ public class TreasureOptions {
     
     private int[][] spawnGroups;
     private int[] groupWeights;
+    private AmbushPlanner ambushPlanner;
+    private int maxAmbushGuards = 64;
+    private int ambushFailureLimit = 3;
+    private int ambushSpawnsPerTick = 2;
+    private int ambushMaxSlope = 40;
+    private int ambushGuardTimeout = 1800;
+    private int ambushLeaveDistance = 30;
+    private int ambushGlobalBudget = 400;
+    private int ambushGlobalRefill = 200;
+    private int ambushRegionBudget = 60;
+    private int ambushRegionRefill = 30;
+    private int ambushRegionSize = 64;
+    private int ambushBudgetWait = 120;
     private int[] spawnWeights = new int[10];
     private int[] spawnLimits = new int[10];
     
@@ -91,8 +117,29 @@ public class TreasureOptions {
     private int fantasticRarity = 10000;
     private int rareWindow = 180;
     
+    private AliasTable[] tierTables = new AliasTable[10];
+    private AliasTable rareTable = AliasTable.empty();
+    private AliasTable veryRareTable = AliasTable.empty();
+    private AliasTable extremelyRareTable = AliasTable.empty();
+    private AliasTable unfinishedTable = AliasTable.empty();
+    private AliasTable metalTable = AliasTable.empty();
+    private MaterialTable materialTable = MaterialTable.empty();
+    private CreatureTable creatureTable = CreatureTable.empty();
+    private RewardPipeline rewardPipeline;
+    private RarityTable rarityTable = RarityTable.fromOneIn(rareWindow, fantasticRarity, supremeRarity, rareRarity);
+    private boolean templatesLoaded = false;
+    
     private int minTreasureDistance = 0;
     private int maxTreasureDistance = Integer.MAX_VALUE;
+    
+    private boolean lazyChests = true;
+    private boolean lazyLocations = true;
+    
+    private Level logLevel = Level.INFO;
+    private boolean asyncLogging = true;
+    private int logQueueSize = 4096;
+    private int warningInterval = 60;
+    private long configVersion = 0L;
 
     private TeleportToTreasureAction teleportAction;
     private CreateRandomTreasuremapAction createmapAction;
@@ -101,10 +148,19 @@ public class TreasureOptions {
     private ReadTreasuremapAction readmapAction;
     private DigUpTreasureAction digAction;
     private UnloadFromTreasureAction unloadAction;
+    private UnloadAllFromTreasureAction unloadAllAction;
+    private ReadAllTreasuremapsAction readAllAction;
     private SpawnTreasurechestAction chestAction;
+    private FlushChestsAction flushAction;
+    private ExpectedRewardsAction expectedAction;
+    private MetricsAction metricsAction;
+    private AddToAtlasAction atlasAddAction;
+    private TakeFromAtlasAction atlasTakeAction;
+    private TurnAtlasPageAction atlasPageAction;
     private TreasureBehaviour behaviours;
 
     public TreasureOptions() {
+        Arrays.fill(tierTables, AliasTable.empty());
     }
     
     public void configure(Properties p) {
@@ -118,6 +174,26 @@ public class TreasureOptions {
          * 0.0015 and a multiplier of 66667 will at most be 100.005, destroying
          * the map when unlucky, for example.
          */
+        // Logging first, so the rest of the config is logged at the right level.
+        try {
+            setLogLevel(Level.parse(p.getProperty("logLevel", getLogLevel().getName()).trim().toUpperCase()));
+        }
+        catch (IllegalArgumentException e) {
+            logger.warning(String.format("logLevel %s is not a valid log level, using %s.", p.getProperty("logLevel"), getLogLevel()));
+        }
+        
+        setAsyncLogging(Boolean.valueOf(p.getProperty("asyncLogging", String.valueOf(isAsyncLogging()))));
+        setLogQueueSize(Integer.valueOf(p.getProperty("logQueueSize", String.valueOf(getLogQueueSize()))));
+        setLogQueueSize(Math.min(1000000, Math.max(16, getLogQueueSize())));
+        setWarningInterval(Integer.valueOf(p.getProperty("warningInterval", String.valueOf(getWarningInterval()))));
+        setWarningInterval(Math.max(0, getWarningInterval()));
+        TreasureLog.configure(this);
+        TreasureLog.resetWarnings();
+        logger.info(String.format("Log level %s, background logging %b, repeated warnings at most every %d seconds.", getLogLevel(), isAsyncLogging(), getWarningInterval()));
+        
+        setConfigVersion(TreasureSeed.getConfigVersion(p));
+        logger.info(String.format("Config version: %016x", getConfigVersion()));
+        
         setExtraWarning(Boolean.valueOf(p.getProperty("extraWarning", String.valueOf(isExtraWarning()))));
         logger.log(Level.INFO, "Extra warning: {0}", isExtraWarning());
         
@@ -239,7 +315,13 @@ public class TreasureOptions {
             for (int tier = 0; tier < 10; tier++) {
                 String[] spawnFields = p.getProperty(String.format("tierSpawn%d", tier)).split(":");
                 spawnWeights[tier] = Integer.valueOf(spawnFields[0].trim());
-                spawnLimits[tier] = Integer.valueOf(spawnFields[1].trim());
+                spawnLimits[tier] = Math.max(0, Integer.valueOf(spawnFields[1].trim()));
+                
+                if (spawnWeights[tier] < 0 || spawnWeights[tier] > MAX_SPAWN_WEIGHT) {
+                    logger.warning(String.format("Spawn weight %d of tier %d is out of range, using %d.",
+                        spawnWeights[tier], tier, Math.max(0, Math.min(MAX_SPAWN_WEIGHT, spawnWeights[tier]))));
+                    spawnWeights[tier] = Math.max(0, Math.min(MAX_SPAWN_WEIGHT, spawnWeights[tier]));
+                }
             }
             
             setSpawnWeights(spawnWeights);
@@ -252,6 +334,36 @@ public class TreasureOptions {
         logger.info(String.format("Spawn weights: %s", Arrays.toString(getSpawnWeights())));
         logger.info(String.format("Spawn limits: %s", Arrays.toString(getSpawnLimits())));
         
+        setMaxAmbushGuards(Math.max(1, Integer.valueOf(p.getProperty("maxAmbushGuards", String.valueOf(getMaxAmbushGuards())))));
+        setAmbushFailureLimit(Math.max(1, Integer.valueOf(p.getProperty("ambushFailureLimit", String.valueOf(getAmbushFailureLimit())))));
+        logger.info(String.format("At most %d creatures per ambush, disable spawn groups after %d failed spawns in a row.", getMaxAmbushGuards(), getAmbushFailureLimit()));
+        
+        setAmbushSpawnsPerTick(Integer.valueOf(p.getProperty("ambushSpawnsPerTick", String.valueOf(getAmbushSpawnsPerTick()))));
+        logger.info(String.format("Ambush creatures spawned per server tick: %s", getAmbushSpawnsPerTick() > 0 ? String.valueOf(getAmbushSpawnsPerTick()) : "all"));
+        
+        setAmbushMaxSlope(Math.max(0, Integer.valueOf(p.getProperty("ambushMaxSlope", String.valueOf(getAmbushMaxSlope())))));
+        logger.info(String.format("Ambush creatures don't spawn on tiles steeper than %d.", getAmbushMaxSlope()));
+        
+        setAmbushGuardTimeout(Math.max(0, Integer.valueOf(p.getProperty("ambushGuardTimeout", String.valueOf(getAmbushGuardTimeout())))));
+        setAmbushLeaveDistance(Math.max(1, Integer.valueOf(p.getProperty("ambushLeaveDistance", String.valueOf(getAmbushLeaveDistance())))));
+        logger.info(String.format("Ambushing creatures are removed after %d seconds, or when nobody is within %d tiles.", getAmbushGuardTimeout(), getAmbushLeaveDistance()));
+        
+        setAmbushGlobalBudget(Math.max(0, Integer.valueOf(p.getProperty("ambushGlobalBudget", String.valueOf(getAmbushGlobalBudget())))));
+        setAmbushGlobalRefill(Math.max(1, Integer.valueOf(p.getProperty("ambushGlobalRefill", String.valueOf(getAmbushGlobalRefill())))));
+        setAmbushRegionBudget(Math.max(0, Integer.valueOf(p.getProperty("ambushRegionBudget", String.valueOf(getAmbushRegionBudget())))));
+        setAmbushRegionRefill(Math.max(1, Integer.valueOf(p.getProperty("ambushRegionRefill", String.valueOf(getAmbushRegionRefill())))));
+        setAmbushRegionSize(Math.max(8, Integer.valueOf(p.getProperty("ambushRegionSize", String.valueOf(getAmbushRegionSize())))));
+        setAmbushBudgetWait(Math.max(0, Integer.valueOf(p.getProperty("ambushBudgetWait", String.valueOf(getAmbushBudgetWait())))));
+        logger.info(String.format("Ambush spawn budget: server %d weight (+%d per minute), %d by %d tile regions %d weight (+%d per minute), waiting at most %d seconds.",
+            getAmbushGlobalBudget(), getAmbushGlobalRefill(), getAmbushRegionSize(), getAmbushRegionSize(), getAmbushRegionBudget(), getAmbushRegionRefill(), getAmbushBudgetWait()));
+        AmbushBudget.reset();
+        
+        // Creature templates of the new spawn groups are resolved with the
+        // item templates, see resolveTemplates().
+        setCreatureTable(CreatureTable.empty());
+        setAmbushPlanner(AmbushPlanner.compile(this));
+        logger.info(String.format("Ambush planner: %s", getAmbushPlanner()));
+        
         setBaseMoneyReward(Integer.valueOf(p.getProperty("baseMoneyReward", String.valueOf(getBaseMoneyReward()))));
         setBaseMoneyReward(Math.min(1000000, Math.max(0, getBaseMoneyReward())));
         logger.log(Level.INFO, "Base money reward: {0}", getBaseMoneyReward());
@@ -320,6 +432,11 @@ public class TreasureOptions {
             logger.log(Level.SEVERE, String.format("Could not parse %s as HotA aux data.", Arrays.toString(fields)), e);
             hotaAux = new int[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
         }
+        
+        // Needs at least one element for Random.nextInt(int) not to fail.
+        if (hotaAux.length == 0)
+            hotaAux = new int[] { 0 };
+        
         setHotaAux(hotaAux);
         logger.log(Level.INFO, "HOTA AuxData: {0}", Arrays.toString(getHotaAux()));
         
@@ -523,15 +640,233 @@ public class TreasureOptions {
         setRareWindow(Math.min(2147483647, Math.max(1, getRareWindow())));
         logger.log(Level.INFO, "Rare window chance: {0}", getRareWindow());
         
+        setRarityTable(RarityTable.fromOneIn(getRareWindow(), getFantasticRarity(), getSupremeRarity(), getRareRarity()));
+        logger.info(String.format("Rarity chances: %s", getRarityTable()));
+        
         setTreasuremapTemplateId(Integer.valueOf(p.getProperty("treasuremapTemplateId", String.valueOf(getTreasuremapTemplateId()))));
         setTreasuremapTemplateId(Math.min(32767, Math.max(4200, getTreasuremapTemplateId())));
         logger.log(Level.INFO, "Treasuremap templateID: {0}", getTreasuremapTemplateId());
         
+        setAtlasTemplateId(Integer.valueOf(p.getProperty("atlasTemplateId", String.valueOf(getAtlasTemplateId()))));
+        setAtlasTemplateId(Math.min(32767, Math.max(4200, getAtlasTemplateId())));
+        logger.log(Level.INFO, "Treasure atlas templateID: {0}", getAtlasTemplateId());
+        
+        setAtlasCapacity(Math.max(1, Integer.valueOf(p.getProperty("atlasCapacity", String.valueOf(getAtlasCapacity())))));
+        logger.log(Level.INFO, "Treasure maps per atlas: {0}", getAtlasCapacity());
+        
         setMinTreasureDistance(Integer.valueOf(p.getProperty("minTreasureDistance", String.valueOf(getMinTreasureDistance()))));
         logger.info(String.format("Treasuremap min distance from player: %d", getMinTreasureDistance()));
         
         setMaxTreasureDistance(Integer.valueOf(p.getProperty("maxTreasureDistance", String.valueOf(getMaxTreasureDistance()))));
         logger.info(String.format("Treasuremap max distance from player: %d", getMaxTreasureDistance()));
+        
+        setLazyChests(Boolean.valueOf(p.getProperty("lazyChests", String.valueOf(isLazyChests()))));
+        logger.info(String.format("Create treasure chest contents when first opened: %b", isLazyChests()));
+        
+        setLazyLocations(Boolean.valueOf(p.getProperty("lazyLocations", String.valueOf(isLazyLocations()))));
+        logger.info(String.format("Find treasure locations when maps are first used: %b", isLazyLocations()));
+        
+        compileRewardTables();
+        
+        if (isTemplatesLoaded())
+            resolveTemplates();
+        else
+            setRewardPipeline(RewardPipeline.compile(this));
+    }
+    
+    /**
+     * Resolves everything that needs the item templates and creation
+     * entries, which don't exist yet when the config is first loaded.
+     * Called when the server has started, and on every reload after that.
+     * 
+     * Template IDs that don't exist are dropped from the reward tables and
+     * reported here once, so generating a chest never runs into them.
+     */
+    public void resolveTemplates() {
+        AliasTable[] tierTables = new AliasTable[10];
+        
+        for (int tier = 0; tier < 10; tier++)
+            tierTables[tier] = validateTemplates(String.format("Tier %d rewards", tier), getTierTables()[tier]);
+        
+        setTierTables(tierTables);
+        setRareTable(validateTemplates("rareItems/unfinishedRare", getRareTable()));
+        setUnfinishedTable(validateTemplates("unfinishedItems/kingdomItems", getUnfinishedTable()));
+        setVeryRareTable(validateTemplates("veryRare", getVeryRareTable()));
+        setExtremelyRareTable(validateTemplates("extremelyRare", getExtremelyRareTable()));
+        setMetalTable(validateTemplates("preciousMetals", getMetalTable()));
+        
+        List<Integer> templateIds = new ArrayList<>();
+        
+        for (AliasTable table : getTierTables())
+            addTemplateIds(templateIds, table);
+        
+        addTemplateIds(templateIds, getRareTable());
+        addTemplateIds(templateIds, getVeryRareTable());
+        addTemplateIds(templateIds, getExtremelyRareTable());
+        addTemplateIds(templateIds, getUnfinishedTable());
+        addTemplateIds(templateIds, getMetalTable());
+        
+        // Fixed rewards: coins, sleep powder, HotA statue, barrel and liquid source.
+        for (int templateId : new int[] { 50, 51, 52, 53, 54, 55, 56, 57, 58, 59, 60, 61, 666, 742, 189, 763 })
+            templateIds.add(templateId);
+        
+        setMaterialTable(MaterialTable.build(templateIds.stream().mapToInt(Integer::intValue).toArray()));
+        
+        // Tables may have become empty, which disables their stages.
+        setRewardPipeline(RewardPipeline.compile(this));
+        
+        // Spawn groups lose the creatures that don't exist.
+        setCreatureTable(CreatureTable.build(getSpawnGroups() == null ? new int[0][] : getSpawnGroups()));
+        setAmbushPlanner(AmbushPlanner.compile(this));
+        logger.info(String.format("Ambush planner: %s", getAmbushPlanner()));
+    }
+    
+    /**
+     * Drops template IDs that don't exist from a reward table, the other
+     * entries keep their relative chances.
+     * @param name Name of the table for the log.
+     * @param table Compiled reward table.
+     * @return The same table if all templates exist, otherwise a new table.
+     */
+    private AliasTable validateTemplates(String name, AliasTable table) {
+        int[] values = new int[table.size()];
+        double[] weights = new double[table.size()];
+        List<Integer> invalid = new ArrayList<>();
+        
+        for (int i = 0; i < table.size(); i++) {
+            values[i] = table.getValue(i);
+            
+            if (ItemTemplateFactory.getInstance().getTemplateOrNull(values[i] & ~Treasurereward.UNFINISHED) != null)
+                weights[i] = table.getProbability(i);
+            else
+                invalid.add(values[i] & ~Treasurereward.UNFINISHED);
+        }
+        
+        if (invalid.isEmpty())
+            return table;
+        
+        AliasTable valid = AliasTable.fromWeights(values, weights);
+        logger.warning(String.format("%s contains item template IDs that don't exist: %s. They will be ignored.", name, invalid));
+        
+        if (valid.isEmpty())
+            logger.warning(String.format("%s has no valid item templates left.", name));
+        
+        return valid;
+    }
+    
+    private void addTemplateIds(List<Integer> templateIds, AliasTable table) {
+        for (int i = 0; i < table.size(); i++)
+            templateIds.add(table.getValue(i) & ~Treasurereward.UNFINISHED);
+    }
+    
+    /**
+     * Compiles the reward groups, tier rewards, and reward lists into
+     * sampling tables. Duplicate entries become weights, and invalid template
+     * IDs or group indices are dropped here once, instead of being found
+     * while a chest is generated.
+     */
+    private void compileRewardTables() {
+        AliasTable[] tierTables = new AliasTable[10];
+        
+        for (int tier = 0; tier < 10; tier++) {
+            int[] groups = getTierItems()[tier] == null ? new int[0] : getTierItems()[tier];
+            Map<Integer, Double> weights = new LinkedHashMap<>();
+            int validGroups = 0;
+            
+            for (int group : groups)
+                if (countValidTemplates(group) > 0)
+                    validGroups++;
+            
+            for (int group : groups) {
+                int validTemplates = countValidTemplates(group);
+                
+                if (validTemplates == 0) {
+                    logger.warning(String.format("tierReward%d uses reward group %d, which does not exist or has no valid item template IDs. It will be ignored.", tier, group));
+                    continue;
+                }
+                
+                for (int templateId : getTierGroups()[group])
+                    if (templateId > 0)
+                        weights.merge(templateId, 1d / validGroups / validTemplates, Double::sum);
+            }
+            
+            int[] values = new int[weights.size()];
+            double[] chances = new double[weights.size()];
+            int index = 0;
+            
+            for (Map.Entry<Integer, Double> weight : weights.entrySet()) {
+                values[index] = weight.getKey();
+                chances[index++] = weight.getValue();
+            }
+            
+            tierTables[tier] = AliasTable.fromWeights(values, chances);
+            
+            if (tierTables[tier].isEmpty())
+                logger.warning(String.format("Treasure tier %d has no valid reward items, it will not give any tier rewards.", tier));
+            
+            logger.info(String.format("Tier %d reward table: %s", tier, tierTables[tier]));
+        }
+        
+        setTierTables(tierTables);
+        
+        // Unfinished rares are flagged, so a single table draw picks from
+        // both lists with the same odds as before.
+        int[] rares = new int[getUnfinishedRares().length + getRareItems().length];
+        
+        for (int i = 0; i < getUnfinishedRares().length; i++)
+            rares[i] = getUnfinishedRares()[i] | Treasurereward.UNFINISHED;
+        
+        System.arraycopy(getRareItems(), 0, rares, getUnfinishedRares().length, getRareItems().length);
+        setRareTable(compileList("rareItems/unfinishedRare", rares));
+        
+        int[] unfinished = new int[getUnfinisheds().length + getKingdomItems().length];
+        
+        for (int i = 0; i < getUnfinisheds().length; i++)
+            unfinished[i] = getUnfinisheds()[i] | Treasurereward.UNFINISHED;
+        
+        System.arraycopy(getKingdomItems(), 0, unfinished, getUnfinisheds().length, getKingdomItems().length);
+        setUnfinishedTable(compileList("unfinishedItems/kingdomItems", unfinished));
+        
+        setVeryRareTable(compileList("veryRare", getVeryRares()));
+        setExtremelyRareTable(compileList("extremelyRare", getExtremelyRares()));
+        setMetalTable(compileList("preciousMetals", getMetals()));
+    }
+    
+    /**
+     * Counts the usable template IDs of a reward group.
+     * @param group Index of the reward group.
+     * @return Number of template IDs greater than zero, or 0 if the group does not exist.
+     */
+    private int countValidTemplates(int group) {
+        if (group < 0 || group >= getTierGroups().length || getTierGroups()[group] == null)
+            return 0;
+        
+        int count = 0;
+        
+        for (int templateId : getTierGroups()[group])
+            if (templateId > 0)
+                count++;
+        
+        return count;
+    }
+    
+    /**
+     * Compiles a list of template IDs into a sampling table, dropping and
+     * reporting invalid IDs.
+     * @param name Name of the config option for the log.
+     * @param entries Template IDs, duplicates increase the chance of that item.
+     * @return Sampling table, may be empty.
+     */
+    private AliasTable compileList(String name, int[] entries) {
+        int[] valid = Arrays.stream(entries).filter(id -> (id & ~Treasurereward.UNFINISHED) > 0).toArray();
+        
+        if (valid.length < entries.length)
+            logger.warning(String.format("%s has %d invalid item template IDs, they will be ignored.", name, entries.length - valid.length));
+        
+        AliasTable table = AliasTable.fromEntries(valid);
+        logger.info(String.format("%s table: %s", name, table));
+        
+        return table;
     }
     
     public int getTreasuremapTemplateId() {
@@ -542,6 +877,22 @@ public class TreasureOptions {
         this.treasuremapTemplateId = treasuremapTemplateId;
     }
 
+    public int getAtlasTemplateId() {
+        return atlasTemplateId;
+    }
+
+    public void setAtlasTemplateId(int atlasTemplateId) {
+        this.atlasTemplateId = atlasTemplateId;
+    }
+
+    public int getAtlasCapacity() {
+        return atlasCapacity;
+    }
+
+    public void setAtlasCapacity(int atlasCapacity) {
+        this.atlasCapacity = atlasCapacity;
+    }
+
     public boolean isExtraWarning() {
         return extraWarning;
     }
@@ -686,6 +1037,146 @@ public class TreasureOptions {
         this.groupWeights = groupWeights;
     }
 
+    /**
+     * Plans ambushes from the spawn groups and tiers, rebuilt whenever the
+     * config is loaded.
+     * @return Ambush planner.
+     */
+    public AmbushPlanner getAmbushPlanner() {
+        return ambushPlanner;
+    }
+
+    public void setAmbushPlanner(AmbushPlanner ambushPlanner) {
+        this.ambushPlanner = ambushPlanner;
+    }
+
+    public int getMaxAmbushGuards() {
+        return maxAmbushGuards;
+    }
+
+    public void setMaxAmbushGuards(int maxAmbushGuards) {
+        this.maxAmbushGuards = maxAmbushGuards;
+    }
+
+    public int getAmbushFailureLimit() {
+        return ambushFailureLimit;
+    }
+
+    public void setAmbushFailureLimit(int ambushFailureLimit) {
+        this.ambushFailureLimit = ambushFailureLimit;
+    }
+
+    /**
+     * Creatures spawned per server tick, over all ambushes.
+     * @return Spawns per tick, 0 or less spawns everything on the next tick.
+     */
+    public int getAmbushSpawnsPerTick() {
+        return ambushSpawnsPerTick;
+    }
+
+    public void setAmbushSpawnsPerTick(int ambushSpawnsPerTick) {
+        this.ambushSpawnsPerTick = ambushSpawnsPerTick;
+    }
+
+    /**
+     * Largest height difference between a tile's corners that ambushing
+     * creatures may spawn on.
+     * @return Height difference in dirt.
+     */
+    public int getAmbushMaxSlope() {
+        return ambushMaxSlope;
+    }
+
+    public void setAmbushMaxSlope(int ambushMaxSlope) {
+        this.ambushMaxSlope = ambushMaxSlope;
+    }
+
+    /**
+     * Seconds after which ambushing creatures are removed.
+     * @return Timeout in seconds, 0 to only remove them when nobody is near.
+     */
+    public int getAmbushGuardTimeout() {
+        return ambushGuardTimeout;
+    }
+
+    public void setAmbushGuardTimeout(int ambushGuardTimeout) {
+        this.ambushGuardTimeout = ambushGuardTimeout;
+    }
+
+    /**
+     * Tiles the ambushed player may move away from the chest, and other
+     * players may be away from a guard, before the guard is removed.
+     * @return Distance in tiles.
+     */
+    public int getAmbushLeaveDistance() {
+        return ambushLeaveDistance;
+    }
+
+    public void setAmbushLeaveDistance(int ambushLeaveDistance) {
+        this.ambushLeaveDistance = ambushLeaveDistance;
+    }
+
+    /**
+     * Ambush spawn weight the whole server can take at once.
+     * @return Budget, 0 for no limit.
+     */
+    public int getAmbushGlobalBudget() {
+        return ambushGlobalBudget;
+    }
+
+    public void setAmbushGlobalBudget(int ambushGlobalBudget) {
+        this.ambushGlobalBudget = ambushGlobalBudget;
+    }
+
+    public int getAmbushGlobalRefill() {
+        return ambushGlobalRefill;
+    }
+
+    public void setAmbushGlobalRefill(int ambushGlobalRefill) {
+        this.ambushGlobalRefill = ambushGlobalRefill;
+    }
+
+    /**
+     * Ambush spawn weight a single region can take at once.
+     * @return Budget, 0 for no limit.
+     */
+    public int getAmbushRegionBudget() {
+        return ambushRegionBudget;
+    }
+
+    public void setAmbushRegionBudget(int ambushRegionBudget) {
+        this.ambushRegionBudget = ambushRegionBudget;
+    }
+
+    public int getAmbushRegionRefill() {
+        return ambushRegionRefill;
+    }
+
+    public void setAmbushRegionRefill(int ambushRegionRefill) {
+        this.ambushRegionRefill = ambushRegionRefill;
+    }
+
+    public int getAmbushRegionSize() {
+        return ambushRegionSize;
+    }
+
+    public void setAmbushRegionSize(int ambushRegionSize) {
+        this.ambushRegionSize = ambushRegionSize;
+    }
+
+    /**
+     * Seconds an ambush waits for spawn budget before the rest of it is
+     * left out.
+     * @return Wait in seconds.
+     */
+    public int getAmbushBudgetWait() {
+        return ambushBudgetWait;
+    }
+
+    public void setAmbushBudgetWait(int ambushBudgetWait) {
+        this.ambushBudgetWait = ambushBudgetWait;
+    }
+
     public int[] getSpawnWeights() {
         return spawnWeights;
     }
@@ -998,6 +1489,94 @@ public class TreasureOptions {
         this.rareWindow = rareWindow;
     }
 
+    public AliasTable[] getTierTables() {
+        return tierTables;
+    }
+
+    public void setTierTables(AliasTable[] tierTables) {
+        this.tierTables = tierTables;
+    }
+
+    public AliasTable getRareTable() {
+        return rareTable;
+    }
+
+    public void setRareTable(AliasTable rareTable) {
+        this.rareTable = rareTable;
+    }
+
+    public AliasTable getVeryRareTable() {
+        return veryRareTable;
+    }
+
+    public void setVeryRareTable(AliasTable veryRareTable) {
+        this.veryRareTable = veryRareTable;
+    }
+
+    public AliasTable getExtremelyRareTable() {
+        return extremelyRareTable;
+    }
+
+    public void setExtremelyRareTable(AliasTable extremelyRareTable) {
+        this.extremelyRareTable = extremelyRareTable;
+    }
+
+    public AliasTable getUnfinishedTable() {
+        return unfinishedTable;
+    }
+
+    public void setUnfinishedTable(AliasTable unfinishedTable) {
+        this.unfinishedTable = unfinishedTable;
+    }
+
+    public CreatureTable getCreatureTable() {
+        return creatureTable;
+    }
+
+    public void setCreatureTable(CreatureTable creatureTable) {
+        this.creatureTable = creatureTable;
+    }
+
+    public MaterialTable getMaterialTable() {
+        return materialTable;
+    }
+
+    public void setMaterialTable(MaterialTable materialTable) {
+        this.materialTable = materialTable;
+    }
+
+    public RewardPipeline getRewardPipeline() {
+        return rewardPipeline;
+    }
+
+    public void setRewardPipeline(RewardPipeline rewardPipeline) {
+        this.rewardPipeline = rewardPipeline;
+    }
+
+    public RarityTable getRarityTable() {
+        return rarityTable;
+    }
+
+    public void setRarityTable(RarityTable rarityTable) {
+        this.rarityTable = rarityTable;
+    }
+
+    public boolean isTemplatesLoaded() {
+        return templatesLoaded;
+    }
+
+    public void setTemplatesLoaded(boolean templatesLoaded) {
+        this.templatesLoaded = templatesLoaded;
+    }
+
+    public AliasTable getMetalTable() {
+        return metalTable;
+    }
+
+    public void setMetalTable(AliasTable metalTable) {
+        this.metalTable = metalTable;
+    }
+
     public TeleportToTreasureAction getTeleportAction() {
         return teleportAction;
     }
@@ -1054,6 +1633,22 @@ public class TreasureOptions {
         return this.unloadAction = unloadAction;
     }
 
+    public UnloadAllFromTreasureAction getUnloadAllAction() {
+        return unloadAllAction;
+    }
+
+    public UnloadAllFromTreasureAction setUnloadAllAction(UnloadAllFromTreasureAction unloadAllAction) {
+        return this.unloadAllAction = unloadAllAction;
+    }
+
+    public ReadAllTreasuremapsAction getReadAllAction() {
+        return readAllAction;
+    }
+
+    public ReadAllTreasuremapsAction setReadAllAction(ReadAllTreasuremapsAction readAllAction) {
+        return this.readAllAction = readAllAction;
+    }
+
     public SpawnTreasurechestAction getChestAction() {
         return chestAction;
     }
@@ -1062,6 +1657,54 @@ public class TreasureOptions {
         return this.chestAction = chestAction;
     }
 
+    public FlushChestsAction getFlushAction() {
+        return flushAction;
+    }
+
+    public FlushChestsAction setFlushAction(FlushChestsAction flushAction) {
+        return this.flushAction = flushAction;
+    }
+
+    public ExpectedRewardsAction getExpectedAction() {
+        return expectedAction;
+    }
+
+    public ExpectedRewardsAction setExpectedAction(ExpectedRewardsAction expectedAction) {
+        return this.expectedAction = expectedAction;
+    }
+
+    public MetricsAction getMetricsAction() {
+        return metricsAction;
+    }
+
+    public MetricsAction setMetricsAction(MetricsAction metricsAction) {
+        return this.metricsAction = metricsAction;
+    }
+
+    public AddToAtlasAction getAtlasAddAction() {
+        return atlasAddAction;
+    }
+
+    public AddToAtlasAction setAtlasAddAction(AddToAtlasAction atlasAddAction) {
+        return this.atlasAddAction = atlasAddAction;
+    }
+
+    public TakeFromAtlasAction getAtlasTakeAction() {
+        return atlasTakeAction;
+    }
+
+    public TakeFromAtlasAction setAtlasTakeAction(TakeFromAtlasAction atlasTakeAction) {
+        return this.atlasTakeAction = atlasTakeAction;
+    }
+
+    public TurnAtlasPageAction getAtlasPageAction() {
+        return atlasPageAction;
+    }
+
+    public TurnAtlasPageAction setAtlasPageAction(TurnAtlasPageAction atlasPageAction) {
+        return this.atlasPageAction = atlasPageAction;
+    }
+
     public TreasureBehaviour getBehaviours() {
         return behaviours;
     }
@@ -1086,6 +1729,71 @@ public class TreasureOptions {
         this.minTreasureDistance = Math.max(0, minTreasureDistance);
     }
 
+    /**
+     * Hash of the loaded config, treasure chests and ambushes are derived
+     * from the map's seed and this version.
+     * @return Config version.
+     */
+    public long getConfigVersion() {
+        return configVersion;
+    }
+
+    public void setConfigVersion(long configVersion) {
+        this.configVersion = configVersion;
+    }
+
+    public Level getLogLevel() {
+        return logLevel;
+    }
+
+    public void setLogLevel(Level logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    public boolean isAsyncLogging() {
+        return asyncLogging;
+    }
+
+    public void setAsyncLogging(boolean asyncLogging) {
+        this.asyncLogging = asyncLogging;
+    }
+
+    public int getLogQueueSize() {
+        return logQueueSize;
+    }
+
+    public void setLogQueueSize(int logQueueSize) {
+        this.logQueueSize = logQueueSize;
+    }
+
+    /**
+     * Seconds between two warnings that are the same.
+     * @return Interval in seconds.
+     */
+    public int getWarningInterval() {
+        return warningInterval;
+    }
+
+    public void setWarningInterval(int warningInterval) {
+        this.warningInterval = warningInterval;
+    }
+
+    public boolean isLazyChests() {
+        return lazyChests;
+    }
+
+    public void setLazyChests(boolean lazyChests) {
+        this.lazyChests = lazyChests;
+    }
+
+    public boolean isLazyLocations() {
+        return lazyLocations;
+    }
+
+    public void setLazyLocations(boolean lazyLocations) {
+        this.lazyLocations = lazyLocations;
+    }
+
     public int getMaxTreasureDistance() {
         return maxTreasureDistance;
     }
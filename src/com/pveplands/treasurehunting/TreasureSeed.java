@@ -0,0 +1,186 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.items.Item;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Every treasure map carries a 64 bit seed in its Extra1 (high bits) and
+ * Extra2 (low bits) fields. The chest contents and the ambush are derived
+ * from that seed and the config version, so digging up a map is
+ * reproducible: with the same map quality, owner kingdom, and config, it
+ * always gives the same chest.
+ *
+ * Maps from before seeds existed have both fields at -1 and keep using
+ * unseeded random numbers.
+ */
+public class TreasureSeed {
+    private static final long UNSET = -1L;
+    private static final long CHEST = 0x43484553545f5631L;
+    private static final long AMBUSH = 0x414d425553485f31L;
+    private static final long LOCATION = 0x4c4f434154494f4eL;
+
+    /**
+     * Options that change what a seed turns into, logging and performance
+     * options are left out so changing them keeps every chest the same.
+     */
+    private static final Set<String> SEEDED_KEYS = new HashSet<>(Arrays.asList(
+        "baseMoneyReward", "moneyRewardMultiplier", "baseKarmaReward", "karmaRewardMultiplier",
+        "basePreciousMetalWeight", "preciousMetalMultiplier", "dragonMultiplier", "preciousMetals",
+        "baseSleepPowderReward", "sleepPowderMultiplier", "hotaChance", "hotaMultiplier", "hotaAux",
+        "rareChance", "rareMultiplier", "rareItems", "unfinishedRare",
+        "veryRareChance", "veryRareMultiplier", "veryRare",
+        "extremelyRareChance", "extremelyRareMultiplier", "extremelyRare",
+        "unfinishedChance", "unfinishedMultiplier", "unfinishedItems", "kingdomItems", "unfinishedKingdoms",
+        "rareRarity", "supremeRarity", "fantasticRarity", "rareWindow", "maxAmbushGuards"));
+
+    /**
+     * Numbered options, e.g. tierReward0 to tierReward9.
+     */
+    private static final String[] SEEDED_PREFIXES = { "tierReward", "rewardGroup", "spawnGroup", "tierSpawn" };
+
+    /**
+     * Creates a new random seed.
+     * @return Seed, never the value that marks a map without seed.
+     */
+    public static long newSeed() {
+        long seed;
+
+        do {
+            seed = ThreadLocalRandom.current().nextLong();
+        } while (seed == UNSET);
+
+        return seed;
+    }
+
+    public static void setSeed(Item map, long seed) {
+        map.setExtra1((int)(seed >>> 32));
+        map.setExtra2((int)seed);
+    }
+
+    public static long getSeed(Item map) {
+        return ((long)map.getExtra1() << 32) | (map.getExtra2() & 0xFFFFFFFFL);
+    }
+
+    public static boolean hasSeed(Item map) {
+        return isSeed(getSeed(map));
+    }
+
+    /**
+     * Checks if a value read from a map is a real seed.
+     * @param seed Seed as stored on a map.
+     * @return False for maps without seed.
+     */
+    public static boolean isSeed(long seed) {
+        return seed != UNSET;
+    }
+
+    /**
+     * Random number generator for a map's chest contents.
+     * @param map Treasure map.
+     * @param fallback Used if the map has no seed.
+     * @return Seeded generator, or the fallback.
+     */
+    public static Random getChestRandom(Item map, Random fallback) {
+        return hasSeed(map) ? new Random(derive(getSeed(map), CHEST)) : fallback;
+    }
+
+    /**
+     * Random number generator for a map's ambush.
+     * @param map Treasure map.
+     * @param fallback Used if the map has no seed.
+     * @return Seeded generator, or the fallback.
+     */
+    public static Random getAmbushRandom(Item map, Random fallback) {
+        return hasSeed(map) ? new Random(derive(getSeed(map), AMBUSH)) : fallback;
+    }
+
+    /**
+     * Random number generator for finding a map's treasure location.
+     * @param seed Seed of the map, may be unset.
+     * @param fallback Used if there is no seed.
+     * @return Seeded generator, or the fallback.
+     */
+    public static Random getLocationRandom(long seed, Random fallback) {
+        return isSeed(seed) ? new Random(derive(seed, LOCATION)) : fallback;
+    }
+
+    /**
+     * Picks the material of every planned entry that has none yet, in
+     * entry order, so they can be reproduced from the same seed.
+     * @param manifest Planned contents.
+     * @param random Seeded random number generator.
+     */
+    public static void pinMaterials(RewardManifest manifest, Random random) {
+        MaterialTable materials = TreasureHunting.getOptions().getMaterialTable();
+
+        for (int i = 0; i < manifest.size(); i++)
+            if (manifest.getMaterial(i) == 0)
+                manifest.setMaterial(i, materials.getMaterial(manifest.getRealTemplateId(i), random));
+    }
+
+    /**
+     * Combines a map's seed with the config version and a purpose, so
+     * the chest and the ambush don't share random numbers.
+     * @param seed Seed of the map.
+     * @param purpose Constant for what the numbers are used for.
+     * @return Derived seed.
+     */
+    public static long derive(long seed, long purpose) {
+        return mix(mix(seed ^ TreasureHunting.getOptions().getConfigVersion()) ^ purpose);
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads every input bit over the whole result.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Hashes the reward and spawn options, in key order, so any change to
+     * them gives a different version.
+     * @param properties Loaded config.
+     * @return 64 bit FNV-1a hash.
+     */
+    public static long getConfigVersion(Properties properties) {
+        Map<String, String> sorted = new TreeMap<>();
+
+        for (String key : properties.stringPropertyNames())
+            if (isSeeded(key))
+                sorted.put(key, properties.getProperty(key));
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            String line = entry.getKey() + "=" + entry.getValue().trim() + "\n";
+
+            for (int i = 0; i < line.length(); i++) {
+                hash ^= line.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+
+        return hash;
+    }
+
+    private static boolean isSeeded(String key) {
+        if (SEEDED_KEYS.contains(key))
+            return true;
+
+        for (String prefix : SEEDED_PREFIXES)
+            if (key.startsWith(prefix) && key.length() > prefix.length() && Character.isDigit(key.charAt(prefix.length())))
+                return true;
+
+        return false;
+    }
+}
@@ -3,8 +3,8 @@ package com.pveplands.treasurehunting;
 import com.wurmonline.server.creatures.Creature;
 import com.wurmonline.server.items.Item;
 import com.wurmonline.server.items.ItemFactory;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -13,7 +13,37 @@ import java.util.logging.Logger;
  */
 public class Treasurechest {
     private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(Treasurechest.class));
+    private static final Random random = new Random();
 
+    /**
+     * Quality of the chest a map digs up, the map's quality plus 10 per rarity.
+     * @param map Treasure map.
+     * @return Quality from 1 to 100.
+     */
+    public static double GetChestQuality(Item map) {
+        return Math.max(1, Math.min(100d, map.getCurrentQualityLevel() + (map.getRarity() * 10)));
+    }
+    
+    /**
+     * Plans the contents of the chest a map digs up, without creating
+     * anything. For maps with a seed the result is always the same for the
+     * same map quality, kingdom and config, so it can be used to check what
+     * a map gave or will give.
+     * @param map Treasure map.
+     * @param kingdom Kingdom of the player digging.
+     * @return Planned chest contents.
+     */
+    public static RewardManifest PlanTreasurechest(Item map, byte kingdom) {
+        Random chestRandom = TreasureSeed.getChestRandom(map, random);
+        RewardManifest manifest = Treasurereward.plan(GetChestQuality(map), kingdom, chestRandom);
+        
+        // Pick materials now, so they come from the seed too.
+        if (chestRandom != random)
+            TreasureSeed.pinMaterials(manifest, chestRandom);
+        
+        return RewardStacker.stack(manifest);
+    }
+    
     /**
      * Generates a treasure chest with all contents from a treasure map.
      * @param performer Creatures the treasure is generated for.
@@ -30,31 +60,28 @@ public class Treasurechest {
         Item chest = null;
         
         try {
-            double quality = Math.max(1, Math.min(100d, map.getCurrentQualityLevel() + (map.getRarity() * 10)));
+            double quality = GetChestQuality(map);
+            byte kingdom = performer == null ? 0 : performer.getKingdomId();
+            
+            if (TreasureSeed.hasSeed(map))
+                logger.info(String.format("Treasure map %d has seed %016x, config version %016x, quality %.2f, kingdom %d.",
+                    map.getWurmId(), TreasureSeed.getSeed(map), TreasureHunting.getOptions().getConfigVersion(), quality, kingdom));
+            
+            logger.fine("Planning treasure chest contents.");
+            RewardManifest manifest = PlanTreasurechest(map, kingdom);
             
-            logger.info("Creating treasure chest item.");
+            logger.fine("Creating treasure chest item.");
             chest = ItemFactory.createItem(995, (float)quality, map.getRarity(), null);
             
-            logger.info("Creating money reward.");
-            add(chest, Treasurereward.getMoney(quality));
-            logger.info("Creating sleep powder reward.");
-            add(chest, Treasurereward.getSleepPowder(quality));
-            logger.info("Creating precious metals.");
-            add(chest, Treasurereward.getPreciousMetal(quality));
-            logger.info("Creating HOTA reward");
-            add(chest, Treasurereward.getHotaStatue(quality));
-            logger.info("Creating rare item reward.");
-            add(chest, Treasurereward.getRareItem(performer, quality));
-            logger.info("Creating very rare item reward.");
-            add(chest, Treasurereward.getVeryRareItem(quality));
-            logger.info("Creating extremely rare item reward.");
-            add(chest, Treasurereward.getExtremelyRareItem(quality));
-            logger.info("Creating unfinished (kingdom) item reward.");
-            add(chest, Treasurereward.getUnfinishedItem(performer, quality));
-            logger.info("Creating actual item reward.");
-            add(chest, Treasurereward.getTierRewards(quality));
-            logger.info("Creating karma reward.");
-            add(chest, Treasurereward.getKarmaReward(quality));
+            if (TreasureHunting.getOptions().isLazyChests() && PendingChests.isEnabled()) {
+                // Contents are created when the chest is opened for the first time.
+                PendingChests.register(chest, manifest);
+                logger.info(String.format("Planned %d items for treasure chest (%d).", manifest.getItemCount(), chest.getWurmId()));
+            }
+            else {
+                int created = RewardMaterialiser.materialise(chest, manifest);
+                logger.info(String.format("Created %d of %d planned items in treasure chest (%d).", created, manifest.getItemCount(), chest.getWurmId()));
+            }
         }
         catch (Exception e) {
             logger.log(Level.SEVERE, "Treasure chest creation failed.", e);
@@ -62,32 +89,4 @@ public class Treasurechest {
         
         return chest;
     }
-    
-    /**
-     * Inserts an item into another.
-     * @param chest Container to insert the item into.
-     * @param item Item to be inserted, may be null.
-     */
-    public static void add(Item chest, Item item) {
-        if (item == null)
-            return;
-        
-        logger.log(Level.INFO, "Inserting {0} into treasurechest.", item.getName());
-        chest.insertItem(item, true);
-    }
-    
-    /**
-     * Inserts a list of items into another.
-     * @param chest Container to insert the items into.
-     * @param list List of items, may be null or empty.
-     */
-    public static void add(Item chest, ArrayList<Item> list) {
-        if (list == null)
-            return;
-        
-        for (Item item : list) {
-            logger.log(Level.INFO, "Inserting {0} into treasurechest.", item.getName());
-            chest.insertItem(item, true);
-        }
-    }
 }
@@ -7,15 +7,12 @@ import com.wurmonline.server.Players;
 import com.wurmonline.server.Server;
 import com.wurmonline.server.behaviours.Terraforming;
 import com.wurmonline.server.creatures.Creature;
-import com.wurmonline.server.creatures.CreatureTemplate;
-import com.wurmonline.server.creatures.CreatureTemplateFactory;
 import com.wurmonline.server.creatures.NoSuchCreatureException;
 import com.wurmonline.server.items.Item;
 import com.wurmonline.server.items.ItemFactory;
 import com.wurmonline.server.players.Player;
 import com.wurmonline.server.skills.Skill;
 import com.wurmonline.server.skills.SkillList;
-import com.wurmonline.server.sounds.SoundPlayer;
 import com.wurmonline.server.villages.Villages;
 import com.wurmonline.server.zones.Zones;
 import java.util.Arrays;
@@ -31,88 +28,72 @@ public class Treasuremap {
     private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(Treasuremap.class));
     
     /**
-     * Spawns a set of creatures when a treasure is dug up.
+     * The two highest bits of Data1 are 10 while a seeded map has no
+     * treasure location yet. Maps from before lazy locations have no seed,
+     * and -1 or other negative Data1 values of weathered maps have both
+     * bits set, so neither is mistaken for an unresolved map.
+     */
+    private static final int UNRESOLVED = 0x80000000;
+    private static final int UNRESOLVED_MASK = 0xC0000000;
+    
+    /**
+     * Plans a set of creatures when a treasure is dug up, they are spawned
+     * over the next server ticks by the AmbushScheduler.
      * 
      * @param performer Player who dug up the treasure.
      * @param map The treasure map item.
      * @param chest The chest that was spawned.
-     * @return true if one or more creatures were spawns, or false otherwise.
+     * @return true if one or more creatures will spawn, or false otherwise.
      */
     public static boolean SpawnGuards(Creature performer, Item map, Item chest) {
         TreasureOptions options = TreasureHunting.getOptions();
-        boolean spawnedGuards = false;
+        Random random = TreasureSeed.getAmbushRandom(map, Treasuremap.random);
         double quality = map.getCurrentQualityLevel() + map.getRarity() * 10;
         int tier = (int)Math.min(9, Math.max(0, quality / 10d));
         
-        int weightToSpawn = options.getSpawnWeights()[tier];
-        int weightLimit = options.getSpawnLimits()[tier];
+        // The whole ambush is planned before anything spawns.
+        AmbushPlanner planner = options.getAmbushPlanner();
+        CreatureTable creatures = options.getCreatureTable();
+        AmbushPlanner.Plan guards = planner.plan(tier, random);
         
-        logger.info(String.format("%.2f treasure map, tier %d, effective quality %.2f will start spawning %d weight, weight limit %d for %s",
-            map.getCurrentQualityLevel(), tier, quality, weightToSpawn, weightLimit, performer.getName() ));
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(String.format("%.2f treasure map, tier %d, effective quality %.2f spawns %s for %s",
+                map.getCurrentQualityLevel(), tier, quality, guards, performer.getName()));
         
-        while (weightToSpawn > 0) {
-            int x = chest.getTileX() + (random.nextInt(3) * (random.nextBoolean() ? -1 : 1));
-            int y = chest.getTileY() + (random.nextInt(3) * (random.nextBoolean() ? -1 : 1));
+        AmbushScheduler.Ambush ambush = new AmbushScheduler.Ambush(performer, chest, planner);
+        
+        SpawnRing ring = guards.size() == 0 ? null : SpawnRing.find(chest.getTileX(), chest.getTileY(), guards.size());
+        
+        for (int i = 0; i < guards.size(); i++) {
+            int id = guards.getTemplateId(i);
+            int tile = ring.pick(random);
+            int x = tile >>> 16;
+            int y = tile & 0xFFFF;
             
-            try {
-                //int id = SpawnCreature(weightToSpawn, weightLimit);
-                
-                int highSpawn = -1, lowSpawn = -1, id;
-        
-                for (int i = options.getGroupWeights().length - 1; i >= 0; i--) {
-                    if (weightToSpawn >= options.getGroupWeights()[i] && options.getGroupWeights()[i] <= weightLimit) {
-                        if (highSpawn < 0)
-                            highSpawn = i;
-                        else {
-                            lowSpawn = i;
-                            break;
-                        }
-                    }
-                }
-
-                if (lowSpawn < 0)
-                    lowSpawn = highSpawn;
-
-                if (highSpawn < 0)
-                    throw new Exception(String.format("Could not determine a spawnable creature group for totalWeigh %d, with limit %d.", weightToSpawn, weightLimit));
-
-                int spawnWeight = options.getGroupWeights()[highSpawn] + options.getGroupWeights()[lowSpawn];
-                
-                if (random.nextInt(spawnWeight) <= options.getGroupWeights()[highSpawn]) {
-                    id = options.getSpawnGroups()[highSpawn][random.nextInt(options.getSpawnGroups()[highSpawn].length)];
-                    
-                    logger.log(Level.INFO, String.format("Available spawn weight: %d, heaviest available: %d, spawning ID %d from high group #%d.",
-                        weightToSpawn, weightLimit, id, highSpawn));
-                    
-                    weightToSpawn -= options.getGroupWeights()[highSpawn];
-                }
-                else {
-                    id = options.getSpawnGroups()[lowSpawn][random.nextInt(options.getSpawnGroups()[lowSpawn].length)];
-                    
-                    logger.log(Level.INFO, String.format("Available spawn weight: %d, heaviest allowed: %d, spawning ID %d from low group %d.",
-                        weightToSpawn, weightLimit, id, lowSpawn));
-                    
-                    weightToSpawn -= options.getGroupWeights()[lowSpawn];
-                }
-                
-                CreatureTemplate template = CreatureTemplateFactory.getInstance().getTemplate(id);
-                int age = (int)(random.nextFloat() * Math.min(48, template.getMaxAge()));
-                byte gender = (byte)(random.nextBoolean() ? 1 : 0);
-                
-                logger.info(String.format("Spawning %s at age %d.", template.getName(), age));
-                String name = String.format("%s ambushing %s", template.getName(), performer.getName());
-                
-                Creature.doNew(id, true, (x << 2) + 2, (y << 2) + 2, random.nextFloat() * 360f, 0, name, gender, (byte)0, (byte)0, false, (byte)age);
-                SoundPlayer.playSound(template.getHitSound(gender), x, y, true, 0.3f);
-                
-                spawnedGuards = true;
-            }
-            catch (Exception e) {
-                logger.log(Level.SEVERE, "Failed to spawn treasure chest guard.", e);
+            // Only happens if someone digs before the templates are resolved.
+            if (!creatures.contains(id)) {
+                planner.reportFailure(id);
+                TreasureLog.warnLimited(logger, "ambush.failed." + id, () -> String.format("Failed to plan treasure chest guard %d, the creature template is not resolved.", id));
+                continue;
             }
+            
+            int age = (int)(random.nextFloat() * creatures.getMaxAge(id));
+            byte gender = (byte)(random.nextBoolean() ? 1 : 0);
+            
+            if (logger.isLoggable(Level.FINE))
+                logger.fine(String.format("Planning %s at age %d.", creatures.getName(id), age));
+            String name = String.format("%s ambushing %s", creatures.getName(id), performer.getName());
+            
+            ambush.add(id, guards.getWeight(i), name, x, y, random.nextFloat() * 360f, gender, (byte)age);
+            
+            // One sound for the whole ambush, from its first creature.
+            if (ambush.size() == 1)
+                ambush.setSound(creatures.getHitSound(id, gender));
         }
         
-        return spawnedGuards;
+        AmbushScheduler.schedule(ambush);
+        
+        return ambush.size() > 0;
     }
     
     /**
@@ -121,45 +102,13 @@ public class Treasuremap {
      * @param totalWeight Total spawn weight that's available.
      * @param limit The heaviest creature that can spawn.
      * @return Creature template ID to spawn.
-     * @throws Exception Config options are probably invalid.
+     * @throws Exception No spawn group fits, config options are probably invalid.
      */
     public static int SpawnCreature(int totalWeight, int limit) throws Exception {
-        TreasureOptions options = TreasureHunting.getOptions();
-        int highSpawn = -1, lowSpawn = -1;
-        int spawnTemplateId = 0;
-        
-        for (int i = options.getGroupWeights().length - 1; i >= 0; i--) {
-            if (totalWeight >= options.getGroupWeights()[i] && options.getGroupWeights()[i] <= limit) {
-                if (highSpawn < 0)
-                    highSpawn = i;
-                else {
-                    lowSpawn = i;
-                    break;
-                }
-            }
-        }
-        
-        if (lowSpawn < 0)
-            lowSpawn = highSpawn;
-        
-        if (highSpawn < 0)
-            throw new Exception(String.format("Could not determine a spawnable creature group for totalWeigh %d, with limit %d.", totalWeight, limit));
-        
-        if (options.getSpawnGroups()[highSpawn].length == 0)
-            throw new Exception(String.format("The spawn group %d is empty, can't spawn creatures.", highSpawn));
-        
-        if (options.getSpawnGroups()[lowSpawn].length == 0)
-            throw new Exception(String.format("The spawn group %d is empty, can't spawn creatures.", lowSpawn));
-        
-        int spawnWeight = options.getGroupWeights()[highSpawn] + options.getGroupWeights()[lowSpawn];
-        
-        if (random.nextInt(spawnWeight) <= options.getGroupWeights()[highSpawn])
-            spawnTemplateId = options.getSpawnGroups()[highSpawn][random.nextInt(options.getSpawnGroups()[highSpawn].length)];
-        
-        spawnTemplateId = options.getSpawnGroups()[lowSpawn][random.nextInt(options.getSpawnGroups()[lowSpawn].length)];
+        int spawnTemplateId = TreasureHunting.getOptions().getAmbushPlanner().pick(totalWeight, limit, random);
         
         if (spawnTemplateId <= 0)
-            throw new Exception("One of the creature template IDs for spawning is equal or less than 0, that's not a valid ID.");
+            throw new Exception(String.format("Could not determine a spawnable creature group for totalWeigh %d, with limit %d.", totalWeight, limit));
         
         return spawnTemplateId;
     }
@@ -167,6 +116,7 @@ public class Treasuremap {
     /**
      * Creates a new treasure map when chances are met. The Data1 (DataX, and
      * DataY) field contains the X, Y tile coordinates of the treasure location.
+     * With lazy locations, it holds where the map was found until it's used.
      * 
      * @param performer Player or creature performing an action, NULL if killed is given.
      * @param activated Activated item (e.g. shovel), NULL if killed is given.
@@ -181,6 +131,7 @@ public class Treasuremap {
     /**
      * Creates a new treasure map when chances are met. The Data1 (DataX, and
      * DataY) field contains the X, Y tile coordinates of the treasure location.
+     * With lazy locations, it holds where the map was found until it's used.
      * 
      * @param performer Player or creature performing an action, NULL if killed is given.
      * @param activated Activated item (e.g. shovel), NULL if killed is given.
@@ -206,81 +157,20 @@ public class Treasuremap {
         Item treasuremap = null;
         
         try {
-            // TODO: remove profiling??
-            long profiling = System.nanoTime();
-            
-            int x, y;
-            int tries = 0;
-            int padding = Zones.worldTileSizeX / 20;
-            int maxHeight = 0, minHeight = 0;
-            boolean foundSpot = false, isWaterOrLava = false;
-            
-            int waterCount = 0, heightCount = 0, altarCount = 0, villageCount = 0;
+            Creature origin = performer != null ? performer : killed;
+            int location = -1;
             
-            while (true) {
-                // Gets random X, Y tile coordinates. Stays away from the server
-                // border, 5 % tiles of the world's size.
-                x = random.nextInt(Zones.worldTileSizeX - padding * 2) + padding;
-                y = random.nextInt(Zones.worldTileSizeY - padding * 2) + padding;
-
-                if (!IsAcceptableDistance(performer != null ? performer : killed, x, y)) {
-                    if (++tries > options.getCreationTries()) {
-                        logger.warning("Could not find a treasure location that isn't too close or too far away.");
-                        break; // stop trying.
-                    }
-                    
-                    continue; // try again.
-                }
+            // Maps that are found normally get their location when they're
+            // first used, most are never read.
+            if (gamemaster || !options.isLazyLocations()) {
+                location = FindTreasureLocation(performer, origin.getTileX(), origin.getTileY(), random);
                 
-                // Reset this variable every time we have new coordinates.
-                isWaterOrLava = false;
-
-                maxHeight = Integer.MIN_VALUE;
-                minHeight = Integer.MAX_VALUE;
-
-abort:          for (int ix = x; ix < x + 3; ix++) {
-                    for (int iy = y; iy < y + 3; iy++) {
-                        int tile = Server.surfaceMesh.getTile(ix, iy);
-                        int height = Tiles.decodeHeight(tile);
-
-                        maxHeight = Math.max(maxHeight, height);
-                        minHeight = Math.min(minHeight, height);
-
-                        // Seems a most likey occurance.
-                        if (Terraforming.isTileUnderWater(tile, ix, iy, true) || Tiles.decodeType(tile) == Tiles.Tile.TILE_LAVA.id) {
-                            isWaterOrLava = true;
-                            break abort; // exit the outer loop rightaway!
-                        }
-                    }
+                if (location < 0) {
+                    if (logger.isLoggable(Level.FINE))
+                        logger.fine(String.format("No suitable treasuremap spot found for %s.", killed != null ? killed : performer.getName()));
+                    
+                    return null;
                 }
-
-                // Too many tries. This qualified for a map, but we didn't find a good spot.
-                if (++tries > options.getCreationTries()) break;
-                
-                // All of the below proceeds to pick a new random coordinate.
-                if (isWaterOrLava) { waterCount++; continue; }
-                if (maxHeight - minHeight > options.getMaxHeightDiff()) { heightCount++; continue; }
-                if (Terraforming.isAltarBlocking(performer, x, y)) { altarCount++; continue; }
-                if (Villages.getVillageWithPerimeterAt(x, y, true) != null) { villageCount++; continue; }
-                
-                foundSpot = true;
-                break;
-            }
-            
-            float elapsed = (System.nanoTime() - profiling) / 1000000f;
-            logger.info(String.format("%d tries took %.6f ms. Height diff %d.", tries, elapsed, maxHeight - minHeight));
-            
-            // How many times we failed to find a good spot, and what were the
-            // reasons that the randomly picked coordinates weren't good.
-            if (!foundSpot) {
-                if (killed != null)
-                    logger.info(String.format("No suitable treasuremap spot found for killed creature %s after %d tries. Failing at Water=%d, Height=%d, Altar=%d, Village=%d.",
-                        killed, tries, waterCount, heightCount, altarCount, villageCount));
-                else if (performer != null)
-                    logger.log(Level.INFO, String.format("No suitable treasuremap spot found for %s after %d tries. Failing at Water=%d, Height=%d, Altar=%d, Village=%d.",
-                        performer.getName(), tries, waterCount, heightCount, altarCount, villageCount));
-                
-                return null;
             }
             
             // Vanilla-like rarity chance/
@@ -335,8 +225,13 @@ abort:          for (int ix = x; ix < x + 3; ix++) {
             
             treasuremap = ItemFactory.createItem(options.getTreasuremapTemplateId(), Math.min(99f, Math.max(1.0f, (float)power)), rarity, null);
             
-            // This sets the Data1 value to (x << 16) | y.
-            treasuremap.setDataXY(x, y);
+            // The chest, ambush, and a lazy location are derived from this seed.
+            TreasureSeed.setSeed(treasuremap, TreasureSeed.newSeed());
+            
+            // This sets the Data1 value to (x << 16) | y, or remembers where
+            // the map was found until the location is resolved.
+            if (location >= 0) treasuremap.setDataXY(location >>> 16, location & 0xFFFF);
+            else SetUnresolved(treasuremap, origin.getTileX(), origin.getTileY());
             
             // Vanilla behaviour, for items less than QL 1, it'll set it to 1.00
             // and puts half of it as damage.
@@ -353,8 +248,8 @@ abort:          for (int ix = x; ix < x + 3; ix++) {
             
             // TODO: set log level to FINE after alpha/beta?
             if (performer != null && !gamemaster) {
-                logger.log(Level.INFO, String.format("%s found a %f quality treasure map for %d, %d using %.2f %s. Skillcheck difficulty was %.2f. Their location is %d, %d.",
-                    performer.getName(), treasuremap.getCurrentQualityLevel(), treasuremap.getDataX(), treasuremap.getDataY(), skill.getKnowledge(), skill.getName(), 
+                logger.log(Level.INFO, String.format("%s found a %f quality treasure map for %s using %.2f %s. Skillcheck difficulty was %.2f. Their location is %d, %d.",
+                    performer.getName(), treasuremap.getCurrentQualityLevel(), GetLocationString(treasuremap), skill.getKnowledge(), skill.getName(), 
                     diff,
                     performer.getTileX(), performer.getTileY()));
 
@@ -374,7 +269,8 @@ abort:          for (int ix = x; ix < x + 3; ix++) {
                         skill == null ? 0d : skill.getKnowledge(), skill == null ? "-noskill-" : skill.getName(), diff));
                     
                     try {
-                        logger.info("Attackers: " + killed.getLatestAttackers().length);
+                        if (logger.isLoggable(Level.FINE))
+                            logger.fine("Attackers: " + killed.getLatestAttackers().length);
                         
                         for (long attackerId : killed.getLatestAttackers()) {
                             Player attacker = Players.getInstance().getPlayerOrNull(attackerId);
@@ -407,7 +303,8 @@ abort:          for (int ix = x; ix < x + 3; ix++) {
                                 attacker.playPersonalSound("sound.fx.drumroll");
                             }
                             
-                            logger.info(String.format("Attacker: %s (%d)", attacker.getName(), attacker.getWurmId()));
+                            if (logger.isLoggable(Level.FINE))
+                                logger.fine(String.format("Attacker: %s (%d)", attacker.getName(), attacker.getWurmId()));
                         }
                     }
                     catch (Exception inner) {
@@ -430,6 +327,237 @@ abort:          for (int ix = x; ix < x + 3; ix++) {
         return treasuremap;
     }
     
+    /**
+     * Looks for a treasure location, within the configured distance of where
+     * the map was found. The spot and the tiles around it must be dry land,
+     * fairly flat, not blocked by altars, and outside of deeds.
+     * 
+     * @param performer Creature that altars may block, may be NULL.
+     * @param originX X tile coordinate the map was found at.
+     * @param originY Y tile coordinate the map was found at.
+     * @param random Random number generator to pick coordinates with.
+     * @return Location as (x << 16) | y, or -1 if no spot was found.
+     */
+    public static int FindTreasureLocation(Creature performer, int originX, int originY, Random random) {
+        TreasureOptions options = TreasureHunting.getOptions();
+        
+        // TODO: remove profiling??
+        long profiling = System.nanoTime();
+        
+        int x, y;
+        int tries = 0;
+        int padding = Zones.worldTileSizeX / 20;
+        int maxHeight = 0, minHeight = 0;
+        boolean foundSpot = false, isWaterOrLava = false;
+        
+        int waterCount = 0, heightCount = 0, altarCount = 0, villageCount = 0;
+        
+        while (true) {
+            // Gets random X, Y tile coordinates. Stays away from the server
+            // border, 5 % tiles of the world's size.
+            x = random.nextInt(Zones.worldTileSizeX - padding * 2) + padding;
+            y = random.nextInt(Zones.worldTileSizeY - padding * 2) + padding;
+
+            if (!IsAcceptableDistance(originX, originY, x, y)) {
+                if (++tries > options.getCreationTries()) {
+                    logger.warning("Could not find a treasure location that isn't too close or too far away.");
+                    break; // stop trying.
+                }
+                
+                continue; // try again.
+            }
+            
+            // Reset this variable every time we have new coordinates.
+            isWaterOrLava = false;
+
+            maxHeight = Integer.MIN_VALUE;
+            minHeight = Integer.MAX_VALUE;
+
+abort:      for (int ix = x; ix < x + 3; ix++) {
+                for (int iy = y; iy < y + 3; iy++) {
+                    int tile = Server.surfaceMesh.getTile(ix, iy);
+                    int height = Tiles.decodeHeight(tile);
+
+                    maxHeight = Math.max(maxHeight, height);
+                    minHeight = Math.min(minHeight, height);
+
+                    // Seems a most likey occurance.
+                    if (Terraforming.isTileUnderWater(tile, ix, iy, true) || Tiles.decodeType(tile) == Tiles.Tile.TILE_LAVA.id) {
+                        isWaterOrLava = true;
+                        break abort; // exit the outer loop rightaway!
+                    }
+                }
+            }
+
+            // Too many tries. This qualified for a map, but we didn't find a good spot.
+            if (++tries > options.getCreationTries()) break;
+            
+            // All of the below proceeds to pick a new random coordinate.
+            if (isWaterOrLava) { waterCount++; continue; }
+            if (maxHeight - minHeight > options.getMaxHeightDiff()) { heightCount++; continue; }
+            if (Terraforming.isAltarBlocking(performer, x, y)) { altarCount++; continue; }
+            if (Villages.getVillageWithPerimeterAt(x, y, true) != null) { villageCount++; continue; }
+            
+            foundSpot = true;
+            break;
+        }
+        
+        float elapsed = (System.nanoTime() - profiling) / 1000000f;
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(String.format("%d tries took %.6f ms. Height diff %d.", tries, elapsed, maxHeight - minHeight));
+        
+        // How many times we failed to find a good spot, and what were the
+        // reasons that the randomly picked coordinates weren't good.
+        if (!foundSpot) {
+            if (logger.isLoggable(Level.FINE))
+                logger.fine(String.format("No suitable treasure location found near %d, %d after %d tries. Failing at Water=%d, Height=%d, Altar=%d, Village=%d.",
+                    originX, originY, tries, waterCount, heightCount, altarCount, villageCount));
+            
+            return -1;
+        }
+        
+        return (x << 16) | y;
+    }
+    
+    /**
+     * Marks a map as not having a treasure location yet, Data1 then holds
+     * the tile the map was found at with the UNRESOLVED marker. The map must
+     * have a seed already.
+     * 
+     * @param map Treasure map.
+     * @param originX X tile coordinate the map was found at.
+     * @param originY Y tile coordinate the map was found at.
+     */
+    public static void SetUnresolved(Item map, int originX, int originY) {
+        map.setData1(UNRESOLVED | (originX & 0x3FFF) << 16 | (originY & 0xFFFF));
+    }
+    
+    /**
+     * Checks if a map's treasure location has been decided.
+     * 
+     * @param map Treasure map.
+     * @return True if Data1 holds the treasure location.
+     */
+    public static boolean IsResolved(Item map) {
+        return IsResolved(map.getData1(), TreasureSeed.getSeed(map));
+    }
+    
+    /**
+     * Checks if a map is too weathered to read. Only maps that are not
+     * waiting for their location can be weathered.
+     * 
+     * @param map Treasure map.
+     * @return True if Data1 is a location, but zero or less.
+     */
+    public static boolean IsWeathered(Item map) {
+        return IsWeathered(map.getData1(), TreasureSeed.getSeed(map));
+    }
+    
+    /**
+     * Finds the treasure location of a map that was created without one, and
+     * writes it into the Data1 field.
+     * 
+     * @param map Treasure map.
+     * @param performer Creature using the map, may be NULL.
+     * @return True if the map has a location now.
+     */
+    public static boolean ResolveLocation(Item map, Creature performer) {
+        if (IsResolved(map))
+            return true;
+        
+        int location = ResolveLocation(map.getData1(), TreasureSeed.getSeed(map), performer);
+        
+        if (location < 0)
+            return false;
+        
+        map.setDataXY(location >>> 16, location & 0xFFFF);
+        
+        logger.info(String.format("Treasure map %d now leads to %d, %d.", map.getWurmId(), map.getDataX(), map.getDataY()));
+        
+        return true;
+    }
+    
+    /**
+     * Finds a treasure location for an unresolved Data1 value. Seeded maps
+     * try their seeded location first, so the same map state finds the same
+     * spot. If that spot is not suitable anymore, another random spot is
+     * tried.
+     * 
+     * @param data Unresolved Data1 value, holding where the map was found.
+     * @param seed Seed of the map, may be unset.
+     * @param performer Creature using the map, may be NULL.
+     * @return Location as (x << 16) | y, or -1 if no spot was found.
+     */
+    public static int ResolveLocation(int data, long seed, Creature performer) {
+        int originX = (data >>> 16) & 0x3FFF;
+        int originY = data & 0xFFFF;
+        
+        long start = System.nanoTime();
+        int location = FindTreasureLocation(performer, originX, originY, TreasureSeed.getLocationRandom(seed, random));
+        
+        if (location < 0 && TreasureSeed.isSeed(seed))
+            location = FindTreasureLocation(performer, originX, originY, random);
+        
+        TreasureMetrics.record("map.resolve", System.nanoTime() - start);
+        
+        if (location < 0)
+            TreasureLog.warnLimited(logger, "map.resolve", () -> String.format("Could not find a treasure location for a map found at %d, %d.", originX, originY));
+        else if (logger.isLoggable(Level.FINE))
+            logger.fine(String.format("Treasure map found at %d, %d leads to %d, %d.", originX, originY, location >>> 16, location & 0xFFFF));
+        
+        return location;
+    }
+    
+    /**
+     * Checks if a Data1 value holds a treasure location.
+     * 
+     * @param data Data1 value of a map.
+     * @param seed Seed of the map, may be unset.
+     * @return False if the location has not been found yet.
+     */
+    public static boolean IsResolved(int data, long seed) {
+        return !TreasureSeed.isSeed(seed) || (data & UNRESOLVED_MASK) != UNRESOLVED;
+    }
+    
+    /**
+     * Checks if a Data1 value is a location that can't be read anymore.
+     * 
+     * @param data Data1 value of a map.
+     * @param seed Seed of the map, may be unset.
+     * @return True if the map is resolved, but Data1 is zero or less.
+     */
+    public static boolean IsWeathered(int data, long seed) {
+        return data <= 0 && IsResolved(data, seed);
+    }
+    
+    /**
+     * Damage a treasure map takes from being read once.
+     * 
+     * @param rarity Rarity of the map.
+     * @return Damage to add to the map.
+     */
+    public static float GetReadDamage(int rarity) {
+        float damage = Math.min(100f, Math.max(0.0015f,
+            random.nextFloat() * (0.0015f * TreasureHunting.getOptions().getDamageMultiplier())));
+        
+        // rare, supreme, and fantastic maps take 10%, 20%, and
+        // 30% less damage respectively.
+        return damage * (1f - rarity / 10f);
+    }
+    
+    /**
+     * Describes a map's location for logs.
+     * 
+     * @param map Treasure map.
+     * @return Treasure coordinates, or where the map was found if they're not resolved yet.
+     */
+    public static String GetLocationString(Item map) {
+        if (IsResolved(map))
+            return String.format("%d, %d", map.getDataX(), map.getDataY());
+        
+        return String.format("(unresolved, found at %d, %d)", (map.getData1() >>> 16) & 0x3FFF, map.getData1() & 0xFFFF);
+    }
+    
     /**
      * Determines if a treasure map should be created either for a killed
      * creature (in which case performer, activated and skill should be NULL),
@@ -446,22 +574,24 @@ abort:          for (int ix = x; ix < x + 3; ix++) {
         TreasureOptions options = TreasureHunting.getOptions();
         
         if (killed != null) {
-            Creature caretaker = null;
-            
-            // TODO: Chance this to FINE logging level.
-            try {
-                if (killed.getCareTakerId() != -10)
-                    caretaker = Server.getInstance().getCreature(killed.getCareTakerId());
-            }
-            catch (Exception e) {
-                logger.log(Level.SEVERE, "Could not get caretaker id {0}.", killed.getCareTakerId());
-                logger.log(Level.SEVERE, null, e);
+            // The caretaker is only looked up for the log.
+            if (logger.isLoggable(Level.FINE)) {
+                Creature caretaker = null;
+                
+                try {
+                    if (killed.getCareTakerId() != -10)
+                        caretaker = Server.getInstance().getCreature(killed.getCareTakerId());
+                }
+                catch (Exception e) {
+                    logger.log(Level.SEVERE, "Could not get caretaker id {0}.", killed.getCareTakerId());
+                    logger.log(Level.SEVERE, null, e);
+                }
+                
+                logger.fine(String.format("Checking if creature %s (id %d) at %d, %d aged %d (cared for by? %s) should drop a treasuremap.",
+                    killed.getName(), killed.getWurmId(), killed.getTileX(), killed.getTileY(), killed.getStatus().age, 
+                    caretaker == null ? "Nobody" : caretaker.getName()));
             }
             
-            logger.log(Level.INFO, String.format("Checking if creature %s (id %d) at %d, %d aged %d (cared for by? %s) should drop a treasuremap.",
-                killed.getName(), killed.getWurmId(), killed.getTileX(), killed.getTileY(), killed.getStatus().age, 
-                caretaker == null ? "Nobody" : caretaker.getName()));
-            
             // Should uniques drop a map?
             if (killed.isUnique()) {
                 if (options.getMapUniqueChance() <= 0)
@@ -554,19 +684,7 @@ abort:          for (int ix = x; ix < x + 3; ix++) {
          * To emulate player rarity window (20 seconds if random(3600), we
          * do random(3600/20) and then go from there.
          * */
-        if (random.nextInt(180) > 0)
-            return 0;
-
-        if (random.nextFloat() * 10000f <= 1f)
-            return 3;
-
-        if (random.nextInt(100) == 0)
-            return 2;
-
-        if (random.nextBoolean())
-            return 1;
-
-        return 0;
+        return RarityTable.MAP.roll(0, random);
     }
     
     /**
@@ -579,9 +697,24 @@ abort:          for (int ix = x; ix < x + 3; ix++) {
      * @return True if the distance is within bounds, otherwise false.
      */
     public static boolean IsAcceptableDistance(Creature from, int toX, int toY) {
-        int distanceFromPlayer = Math.min(Math.abs(toX - from.getTileX()), Math.abs(toY - from.getTileY()));
+        return IsAcceptableDistance(from.getTileX(), from.getTileY(), toX, toY);
+    }
+    
+    /**
+     * Checks if the distance between two tiles is within the desired bounds
+     * set in the properties file.
+     * 
+     * @param fromX X tile coordinate to take the distance from.
+     * @param fromY Y tile coordinate to take the distance from.
+     * @param toX Target X tile coordinate.
+     * @param toY Target Y tile coordinate.
+     * @return True if the distance is within bounds, otherwise false.
+     */
+    public static boolean IsAcceptableDistance(int fromX, int fromY, int toX, int toY) {
+        int distanceFromPlayer = Math.min(Math.abs(toX - fromX), Math.abs(toY - fromY));
 
-        logger.info(String.format("%s distance to %d, %d is %d", from, toX, toY, distanceFromPlayer));
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(String.format("%d, %d distance to %d, %d is %d", fromX, fromY, toX, toY, distanceFromPlayer));
         
         return distanceFromPlayer >= TreasureHunting.getOptions().getMinTreasureDistance()
             && distanceFromPlayer <= TreasureHunting.getOptions().getMaxTreasureDistance();
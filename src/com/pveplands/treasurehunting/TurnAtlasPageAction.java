@@ -0,0 +1,75 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.behaviours.Action;
+import com.wurmonline.server.behaviours.ActionEntry;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.items.Item;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import org.gotti.wurmunlimited.modsupport.actions.ActionPerformer;
+import org.gotti.wurmunlimited.modsupport.actions.ModAction;
+import org.gotti.wurmunlimited.modsupport.actions.ModActions;
+
+/**
+ * Opens the next page of a treasure atlas. Reading and digging with an atlas
+ * use the map on the open page.
+ */
+public class TurnAtlasPageAction implements ActionPerformer, ModAction {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(TurnAtlasPageAction.class));
+    
+    private short actionId;
+    private ActionEntry actionEntry;
+    
+    public TurnAtlasPageAction() {
+        actionId = (short)ModActions.getNextActionId();
+        actionEntry = ActionEntry.createEntry(actionId, "Turn page", "turning the page", new int[] { });
+        ModActions.registerAction(actionEntry);
+    }
+    
+    @Override
+    public short getActionId() {
+        return actionId;
+    }
+    
+    public ActionEntry getActionEntry() {
+        return actionEntry;
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer, target);
+    }
+    
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer, target);
+    }
+    
+    private boolean performMyAction(Creature performer, Item target) {
+        if (!TreasureAtlas.isAtlas(target))
+            return true;
+        
+        if (target.getOwnerId() != performer.getWurmId()) {
+            performer.getCommunicator().sendNormalServerMessage("You need to have the atlas in your inventory.");
+            return true;
+        }
+        
+        TreasureAtlas atlas = TreasureAtlas.get(target);
+        
+        if (!atlas.isUsable()) {
+            performer.getCommunicator().sendNormalServerMessage("The pages of the atlas are stuck together, you can't use it right now.");
+            return true;
+        }
+        
+        try {
+            atlas.turnPage();
+            performer.getCommunicator().sendNormalServerMessage(atlas.describePage());
+        }
+        catch (Exception e) {
+            logger.log(Level.SEVERE, String.format("Could not turn the page of atlas %d.", target.getWurmId()), e);
+        }
+        
+        return true;
+    }
+}
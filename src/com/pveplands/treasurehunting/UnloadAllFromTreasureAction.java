@@ -0,0 +1,121 @@
+package com.pveplands.treasurehunting;
+
+import com.wurmonline.server.Items;
+import com.wurmonline.server.NoSuchItemException;
+import com.wurmonline.server.behaviours.Action;
+import com.wurmonline.server.behaviours.ActionEntry;
+import com.wurmonline.server.creatures.Creature;
+import com.wurmonline.server.items.Item;
+import com.wurmonline.server.zones.Zone;
+import com.wurmonline.server.zones.Zones;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nonnull;
+import org.gotti.wurmunlimited.modsupport.actions.ActionPerformer;
+import org.gotti.wurmunlimited.modsupport.actions.ModAction;
+import org.gotti.wurmunlimited.modsupport.actions.ModActions;
+
+/**
+ * Removes all loadable items from a treasure chest at once, instead of
+ * unloading them one by one. The items end up on the player's tile, which
+ * is looked up once for all of them.
+ */
+public class UnloadAllFromTreasureAction implements ActionPerformer, ModAction {
+    private static final Logger logger = Logger.getLogger(TreasureHunting.getLoggerName(UnloadAllFromTreasureAction.class));
+
+    private short actionId;
+    private ActionEntry actionEntry;
+
+    public UnloadAllFromTreasureAction() {
+        actionId = (short)ModActions.getNextActionId();
+        actionEntry = ActionEntry.createEntry(actionId, "Unload everything", "unloading", new int[] { });
+        ModActions.registerAction(actionEntry);
+    }
+
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item source, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer, target);
+    }
+
+    @Override
+    public boolean action(@Nonnull Action action, @Nonnull Creature performer, @Nonnull Item target, short num, float counter) {
+        return performMyAction(performer, target);
+    }
+
+    private boolean performMyAction(Creature performer, Item chest) {
+        if (!performer.isWithinDistanceTo(chest, 8f)) {
+            performer.getCommunicator().sendNormalServerMessage("You're too far away.");
+            return true;
+        }
+
+        // Checked before the pending contents are created, a locked chest
+        // stays untouched until it is picked or unlocked.
+        if (!mayOpen(performer, chest)) {
+            performer.getCommunicator().sendNormalServerMessage(String.format("The %s is locked.", chest.getName()));
+            return true;
+        }
+
+        long start = System.nanoTime();
+        int unloaded = 0;
+
+        try {
+            // A chest that was never opened may not have its contents yet.
+            PendingChests.materialise(chest);
+
+            Zone zone = Zones.getZone(performer.getTilePos(), true);
+
+            for (Item item : chest.getItemsAsArray()) {
+                if (!item.getTemplate().isTransportable())
+                    continue;
+
+                try {
+                    chest.dropItem(item.getWurmId(), true);
+                    item.setLastOwnerId(performer.getWurmId());
+                    zone.addItem(item);
+                    unloaded++;
+                }
+                catch (Exception ex) {
+                    logger.log(Level.SEVERE, String.format("Can't unload item %s (%d) from treasure chest (%d).",
+                        item.getName(), item.getWurmId(), chest.getWurmId()), ex);
+                }
+            }
+        }
+        catch (Exception ex) {
+            logger.log(Level.SEVERE, String.format("Can't unload treasure chest (%d).", chest.getWurmId()), ex);
+        }
+
+        TreasureMetrics.record("chest.unload", System.nanoTime() - start);
+
+        if (unloaded == 0)
+            performer.getCommunicator().sendNormalServerMessage(String.format("There is nothing to unload from the %s.", chest.getName()));
+        else
+            performer.getCommunicator().sendNormalServerMessage(String.format("You unload %d items from the %s.", unloaded, chest.getName()));
+
+        return true;
+    }
+
+    /**
+     * Checks if a chest is unlocked, or the performer has its key or is a
+     * GameMaster.
+     */
+    private static boolean mayOpen(Creature performer, Item chest) {
+        if (!chest.isLocked() || performer.getPower() > 0)
+            return true;
+
+        try {
+            return performer.hasKeyForLock(Items.getItem(chest.getLockId()));
+        }
+        catch (NoSuchItemException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public short getActionId() {
+        return actionId;
+    }
+
+    public ActionEntry getActionEntry() {
+        return actionEntry;
+    }
+}
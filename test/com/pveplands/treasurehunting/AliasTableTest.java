@@ -0,0 +1,84 @@
+package com.pveplands.treasurehunting;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class AliasTableTest {
+    /**
+     * Random number generator that steps nextDouble() evenly through [0, 1).
+     */
+    private static class EvenRandom extends Random {
+        private final int steps;
+        private int step;
+
+        EvenRandom(int steps) {
+            this.steps = steps;
+        }
+
+        @Override
+        public double nextDouble() {
+            return (step++ % steps + 0.5d) / steps;
+        }
+    }
+
+    private static double[] frequencies(AliasTable table, int[] values, int steps) {
+        EvenRandom random = new EvenRandom(steps);
+        double[] counts = new double[values.length];
+
+        for (int i = 0; i < steps; i++) {
+            int value = table.sample(random);
+
+            for (int j = 0; j < values.length; j++)
+                if (values[j] == value)
+                    counts[j] += 1d / steps;
+        }
+
+        return counts;
+    }
+
+    @Test
+    public void duplicateEntriesAddUp() {
+        AliasTable table = AliasTable.fromEntries(new int[] { 7, 3, 7, 7, 5, 3 });
+
+        assertEquals(3, table.size());
+        assertEquals(7, table.getValue(0));
+        assertEquals(3, table.getValue(1));
+        assertEquals(5, table.getValue(2));
+        assertEquals(3d / 6d, table.getProbability(0), 1e-12);
+        assertEquals(2d / 6d, table.getProbability(1), 1e-12);
+        assertEquals(1d / 6d, table.getProbability(2), 1e-12);
+    }
+
+    @Test
+    public void samplesFollowWeights() {
+        int[] values = { 10, 20, 30, 40 };
+        double[] weights = { 1d, 2d, 3d, 10d };
+        AliasTable table = AliasTable.fromWeights(values, weights);
+        double[] frequencies = frequencies(table, values, 160000);
+
+        for (int i = 0; i < values.length; i++)
+            assertEquals(weights[i] / 16d, frequencies[i], 1e-4);
+    }
+
+    @Test
+    public void nonPositiveWeightsAreLeftOut() {
+        AliasTable table = AliasTable.fromWeights(new int[] { 1, 2, 3 }, new double[] { 0d, 5d, -1d });
+        Random random = new Random(1);
+
+        assertEquals(1, table.size());
+
+        for (int i = 0; i < 100; i++)
+            assertEquals(2, table.sample(random));
+    }
+
+    @Test
+    public void emptyInputGivesEmptyTable() {
+        assertTrue(AliasTable.fromEntries(null).isEmpty());
+        assertTrue(AliasTable.fromEntries(new int[0]).isEmpty());
+        assertTrue(AliasTable.fromWeights(new int[] { 1 }, new double[] { 0d }).isEmpty());
+        assertSame(AliasTable.empty(), AliasTable.fromEntries(new int[0]));
+    }
+}
@@ -0,0 +1,109 @@
+package com.pveplands.treasurehunting;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class AmbushPlannerTest {
+    private static TreasureOptions options(int[][] groups, int[] groupWeights, int weight, int limit) {
+        TreasureOptions options = new TreasureOptions();
+        int[] spawnWeights = new int[10];
+        int[] spawnLimits = new int[10];
+
+        for (int tier = 0; tier < 10; tier++) {
+            spawnWeights[tier] = weight;
+            spawnLimits[tier] = limit;
+        }
+
+        options.setSpawnGroups(groups);
+        options.setGroupWeights(groupWeights);
+        options.setSpawnWeights(spawnWeights);
+        options.setSpawnLimits(spawnLimits);
+
+        return options;
+    }
+
+    private static int sum(AmbushPlanner.Plan plan) {
+        int total = 0;
+
+        for (int i = 0; i < plan.size(); i++)
+            total += plan.getWeight(i);
+
+        return total;
+    }
+
+    @Test
+    public void planUsesUpTheSpawnWeight() {
+        AmbushPlanner planner = AmbushPlanner.compile(options(new int[][] { { 11 }, { 22 }, { 33 } }, new int[] { 1, 3, 5 }, 20, 5));
+        Random random = new Random(1);
+
+        for (int i = 0; i < 1000; i++) {
+            AmbushPlanner.Plan plan = planner.plan(4, random);
+            assertEquals(20, sum(plan));
+
+            for (int j = 0; j < plan.size(); j++) {
+                int id = plan.getTemplateId(j), weight = plan.getWeight(j);
+                assertTrue(id == 11 && weight == 1 || id == 22 && weight == 3 || id == 33 && weight == 5);
+            }
+        }
+    }
+
+    @Test
+    public void heavierGroupsThanTheLimitNeverSpawn() {
+        AmbushPlanner planner = AmbushPlanner.compile(options(new int[][] { { 11 }, { 22 }, { 33 } }, new int[] { 1, 3, 5 }, 20, 3));
+        Random random = new Random(2);
+
+        for (int i = 0; i < 1000; i++) {
+            AmbushPlanner.Plan plan = planner.plan(0, random);
+
+            for (int j = 0; j < plan.size(); j++)
+                assertTrue(plan.getTemplateId(j) != 33);
+        }
+
+        assertEquals(11, planner.pick(2, 3, random));
+        assertEquals(-1, planner.pick(0, 3, random));
+    }
+
+    @Test
+    public void ambushIsCappedAtMaxGuards() {
+        TreasureOptions options = options(new int[][] { { 11 } }, new int[] { 1 }, 100, 1);
+        options.setMaxAmbushGuards(8);
+
+        assertEquals(8, AmbushPlanner.compile(options).plan(9, new Random(3)).size());
+    }
+
+    @Test
+    public void failingCreatureDisablesItsGroups() {
+        TreasureOptions options = options(new int[][] { { 11 }, { 22, 11 }, { 33 } }, new int[] { 1, 2, 2 }, 6, 5);
+        options.setAmbushFailureLimit(2);
+        AmbushPlanner planner = AmbushPlanner.compile(options);
+
+        assertFalse(planner.reportFailure(11));
+        planner.reportSuccess(11);
+        assertFalse(planner.reportFailure(11));
+        assertTrue(planner.reportFailure(11));
+        assertTrue(planner.isDisabled(0));
+        assertTrue(planner.isDisabled(1));
+        assertFalse(planner.isDisabled(2));
+
+        Random random = new Random(4);
+
+        for (int i = 0; i < 100; i++) {
+            AmbushPlanner.Plan plan = planner.plan(0, random);
+            assertEquals(3, plan.size());
+
+            for (int j = 0; j < plan.size(); j++)
+                assertEquals(33, plan.getTemplateId(j));
+        }
+    }
+
+    @Test
+    public void invalidTiersPlanNothing() {
+        AmbushPlanner planner = AmbushPlanner.compile(options(new int[][] { { 11 } }, new int[] { 1 }, 5, 1));
+
+        assertEquals(0, planner.plan(-1, new Random()).size());
+        assertEquals(0, planner.plan(10, new Random()).size());
+    }
+}
@@ -0,0 +1,122 @@
+package com.pveplands.treasurehunting;
+
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Compares the rarity table to the separate rolls it replaced, by going
+ * through every value a roll can use instead of sampling.
+ */
+public class RarityTableTest {
+    /**
+     * Random number generator whose nextLong() makes RarityTable.roll use
+     * exactly the given value.
+     */
+    private static class FixedRandom extends Random {
+        private long value;
+
+        @Override
+        public long nextLong() {
+            return value << 1;
+        }
+    }
+
+    /**
+     * Rarity of the old getRarity(), from the results of its nextInt() calls.
+     */
+    private static int oldRarity(int window, int fantastic, int supreme, int rare) {
+        if (window > 0) return 0;
+        if (fantastic == 0) return 3;
+        if (supreme == 0) return 2;
+        if (rare == 0) return 1;
+        return 0;
+    }
+
+    private static long[] countOld(int rareWindow, int fantasticRarity, int supremeRarity, int rareRarity) {
+        long[] counts = new long[4];
+
+        for (int w = 0; w < rareWindow; w++)
+            for (int f = 0; f < fantasticRarity; f++)
+                for (int s = 0; s < supremeRarity; s++)
+                    for (int r = 0; r < rareRarity; r++)
+                        counts[oldRarity(w, f, s, r)]++;
+
+        return counts;
+    }
+
+    private static long[] countTable(RarityTable table, long range, int guaranteed) {
+        long[] counts = new long[4];
+        FixedRandom random = new FixedRandom();
+
+        for (random.value = 0; random.value < range; random.value++)
+            counts[table.roll(guaranteed, random)]++;
+
+        return counts;
+    }
+
+    private static void assertSameCounts(long[] expected, long[] actual) {
+        for (int rarity = 0; rarity < 4; rarity++)
+            assertEquals("rarity " + rarity, expected[rarity], actual[rarity]);
+    }
+
+    @Test
+    public void matchesOldRollsExactly() {
+        int[][] chances = { { 1, 1, 1, 1 }, { 3, 4, 5, 2 }, { 5, 3, 2, 7 }, { 2, 9, 1, 4 }, { 12, 10, 6, 3 } };
+
+        for (int[] c : chances) {
+            RarityTable table = RarityTable.fromOneIn(c[0], c[1], c[2], c[3]);
+            assertTrue(table.isExact());
+            assertSameCounts(countOld(c[0], c[1], c[2], c[3]), countTable(table, (long)c[0] * c[1] * c[2] * c[3], 0));
+        }
+    }
+
+    @Test
+    public void chancesMatchOldRolls() {
+        RarityTable table = RarityTable.fromOneIn(3, 4, 5, 2);
+        long[] old = countOld(3, 4, 5, 2);
+
+        for (int rarity = 0; rarity < 4; rarity++)
+            assertEquals(old[rarity] / 120d, table.getChance(rarity), 1e-12);
+    }
+
+    @Test
+    public void guaranteedRarityIsAFloor() {
+        RarityTable table = RarityTable.fromOneIn(3, 4, 5, 2);
+        long[] old = countOld(3, 4, 5, 2);
+        long[] floored = countTable(table, 120, 2);
+
+        assertEquals(0, floored[0]);
+        assertEquals(0, floored[1]);
+        assertEquals(old[0] + old[1] + old[2], floored[2]);
+        assertEquals(old[3], floored[3]);
+    }
+
+    @Test
+    public void mapFantasticMatchesFloatCheck() {
+        int fantastic = 0;
+
+        // Random.nextFloat() is next(24) / 2^24.
+        for (int k = 0; k < 1 << 24; k++)
+            if (k / (float)(1 << 24) * 10000f <= 1f)
+                fantastic++;
+
+        assertEquals(1678, fantastic);
+        assertTrue(RarityTable.MAP.isExact());
+        assertEquals(1d / 180d * fantastic / (1 << 24), RarityTable.MAP.getChance(3), 1e-15);
+        assertEquals(1d / 180d * (1d - fantastic / (double)(1 << 24)) / 100d, RarityTable.MAP.getChance(2), 1e-15);
+        assertEquals(1d / 180d * (1d - fantastic / (double)(1 << 24)) * 0.99d / 2d, RarityTable.MAP.getChance(1), 1e-15);
+    }
+
+    @Test
+    public void hugeChancesFallBackToDoubles() {
+        RarityTable table = RarityTable.fromOneIn(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 3);
+        Random random = new Random(1);
+
+        assertTrue(!table.isExact());
+
+        for (int i = 0; i < 1000; i++)
+            assertEquals(1, table.roll(1, random));
+    }
+}
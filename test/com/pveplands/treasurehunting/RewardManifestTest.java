@@ -0,0 +1,91 @@
+package com.pveplands.treasurehunting;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class RewardManifestTest {
+    private static RewardManifest roundTrip(RewardManifest manifest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            manifest.write(out);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return RewardManifest.read(in);
+        }
+    }
+
+    @Test
+    public void writeAndReadKeepEveryField() throws IOException {
+        RewardManifest manifest = new RewardManifest(1);
+        int barrel = manifest.add(1234, 55.5f, (byte)2);
+        manifest.setMaterial(barrel, (byte)14);
+        manifest.setWeight(barrel, 8000);
+        manifest.setAuxData(barrel, (byte)3);
+        manifest.setFlag(barrel, RewardManifest.FLAG_CLAMP_WEIGHT);
+
+        int coins = manifest.add(50, 12f, (byte)0);
+        manifest.setCount(coins, 7);
+        manifest.setParent(coins, barrel);
+
+        manifest.addUnfinished(300, 80f, (byte)3);
+
+        RewardManifest read = roundTrip(manifest);
+
+        assertEquals(manifest.size(), read.size());
+        assertEquals(manifest.getItemCount(), read.getItemCount());
+
+        for (int i = 0; i < manifest.size(); i++) {
+            assertEquals(manifest.getTemplateId(i), read.getTemplateId(i));
+            assertEquals(manifest.getRealTemplateId(i), read.getRealTemplateId(i));
+            assertEquals(manifest.getQuality(i), read.getQuality(i), 0d);
+            assertEquals(manifest.getRarity(i), read.getRarity(i));
+            assertEquals(manifest.getMaterial(i), read.getMaterial(i));
+            assertEquals(manifest.getWeight(i), read.getWeight(i));
+            assertEquals(manifest.getAuxData(i), read.getAuxData(i));
+            assertEquals(manifest.getCount(i), read.getCount(i));
+            assertEquals(manifest.getParent(i), read.getParent(i));
+            assertEquals(manifest.hasFlag(i, RewardManifest.FLAG_UNFINISHED), read.hasFlag(i, RewardManifest.FLAG_UNFINISHED));
+            assertEquals(manifest.hasFlag(i, RewardManifest.FLAG_CLAMP_WEIGHT), read.hasFlag(i, RewardManifest.FLAG_CLAMP_WEIGHT));
+        }
+
+        assertEquals(300, read.getRealTemplateId(2));
+        assertTrue(read.hasFlag(2, RewardManifest.FLAG_UNFINISHED));
+    }
+
+    @Test
+    public void emptyManifestRoundTrips() throws IOException {
+        assertTrue(roundTrip(new RewardManifest()).isEmpty());
+    }
+
+    @Test
+    public void manifestsFollowEachOtherInOneStream() throws IOException {
+        RewardManifest first = new RewardManifest();
+        first.add(1, 1f, (byte)0);
+        RewardManifest second = new RewardManifest();
+        second.add(2, 2f, (byte)1);
+        second.add(3, 3f, (byte)0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            first.write(out);
+            out.writeLong(42L);
+            second.write(out);
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(1, RewardManifest.read(in).size());
+            assertEquals(42L, in.readLong());
+            assertEquals(2, RewardManifest.read(in).size());
+            assertEquals(-1, in.read());
+        }
+    }
+}
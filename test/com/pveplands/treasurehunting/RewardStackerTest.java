@@ -0,0 +1,71 @@
+package com.pveplands.treasurehunting;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class RewardStackerTest {
+    @Test
+    public void identicalEntriesAreCounted() {
+        RewardManifest manifest = new RewardManifest();
+        manifest.add(50, 30f, (byte)0);
+        manifest.add(50, 30f, (byte)0);
+        manifest.add(666, 99f, (byte)1);
+        manifest.add(50, 30f, (byte)0);
+
+        RewardManifest stacked = RewardStacker.stack(manifest);
+
+        assertEquals(2, stacked.size());
+        assertEquals(50, stacked.getTemplateId(0));
+        assertEquals(3, stacked.getCount(0));
+        assertEquals(666, stacked.getTemplateId(1));
+        assertEquals(1, stacked.getCount(1));
+        assertEquals(manifest.getItemCount(), stacked.getItemCount());
+    }
+
+    @Test
+    public void differentEntriesStaySeparate() {
+        RewardManifest manifest = new RewardManifest();
+        manifest.add(50, 30f, (byte)0);
+        manifest.add(50, 31f, (byte)0);
+        manifest.add(50, 30f, (byte)1);
+        int material = manifest.add(50, 30f, (byte)0);
+        manifest.setMaterial(material, (byte)7);
+        manifest.addUnfinished(50, 30f, (byte)0);
+
+        assertEquals(5, RewardStacker.stack(manifest).size());
+    }
+
+    @Test
+    public void containersAndContentsAreLeftAlone() {
+        RewardManifest manifest = new RewardManifest();
+        int first = manifest.add(1, 10f, (byte)0);
+        manifest.setParent(manifest.add(2, 10f, (byte)0), first);
+        int second = manifest.add(1, 10f, (byte)0);
+        manifest.setParent(manifest.add(2, 10f, (byte)0), second);
+        manifest.add(2, 10f, (byte)0);
+        manifest.add(2, 10f, (byte)0);
+
+        RewardManifest stacked = RewardStacker.stack(manifest);
+
+        assertEquals(5, stacked.size());
+        assertEquals(-1, stacked.getParent(0));
+        assertEquals(0, stacked.getParent(1));
+        assertEquals(-1, stacked.getParent(2));
+        assertEquals(2, stacked.getParent(3));
+        assertEquals(2, stacked.getCount(4));
+        assertEquals(manifest.getItemCount(), stacked.getItemCount());
+    }
+
+    @Test
+    public void originalIsNotModified() {
+        RewardManifest manifest = new RewardManifest();
+        manifest.add(50, 30f, (byte)0);
+        manifest.add(50, 30f, (byte)0);
+
+        RewardStacker.stack(manifest);
+
+        assertEquals(2, manifest.size());
+        assertEquals(1, manifest.getCount(0));
+        assertEquals(1, manifest.getCount(1));
+    }
+}
@@ -0,0 +1,63 @@
+package com.pveplands.treasurehunting;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class SpawnRingTest {
+    private static int[] tiles(int count) {
+        int[] tiles = new int[count];
+
+        for (int i = 0; i < count; i++)
+            tiles[i] = (100 + i) << 16 | (200 - i);
+
+        return tiles;
+    }
+
+    @Test
+    public void everyTileIsUsedOnceBeforeRepeating() {
+        int[] all = tiles(9);
+        Set<Integer> expected = new HashSet<>();
+
+        for (int tile : all)
+            expected.add(tile);
+
+        SpawnRing ring = new SpawnRing(all.clone());
+        Random random = new Random(5);
+
+        for (int round = 0; round < 50; round++) {
+            Set<Integer> picked = new HashSet<>();
+
+            for (int i = 0; i < all.length; i++)
+                picked.add(ring.pick(random));
+
+            assertEquals(expected, picked);
+        }
+    }
+
+    @Test
+    public void singleTileIsAlwaysPicked() {
+        SpawnRing ring = new SpawnRing(new int[] { 7 << 16 | 9 });
+        Random random = new Random(6);
+
+        for (int i = 0; i < 10; i++)
+            assertEquals(7 << 16 | 9, ring.pick(random));
+
+        assertEquals(1, ring.size());
+    }
+
+    @Test
+    public void picksAreSpreadOverTheTiles() {
+        int[] counts = new int[4];
+        Random random = new Random(7);
+
+        // The first pick of a fresh ring is uniform over all tiles.
+        for (int i = 0; i < 40000; i++)
+            counts[new SpawnRing(new int[] { 0, 1, 2, 3 }).pick(random)]++;
+
+        for (int count : counts)
+            assertEquals(10000, count, 500);
+    }
+}
@@ -0,0 +1,82 @@
+package com.pveplands.treasurehunting;
+
+import java.util.Properties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * A seed must turn into the same numbers on every server and after every
+ * update, or maps that were already found would dig up different chests.
+ */
+public class TreasureSeedTest {
+    private static final long SEED = 0x0123456789abcdefL;
+    private static final long PURPOSE = 0x43484553545f5631L;
+
+    private static long derive(long configVersion, long seed, long purpose) {
+        TreasureOptions options = TreasureHunting.getOptions();
+        long saved = options.getConfigVersion();
+
+        try {
+            options.setConfigVersion(configVersion);
+            return TreasureSeed.derive(seed, purpose);
+        }
+        finally {
+            options.setConfigVersion(saved);
+        }
+    }
+
+    @Test
+    public void deriveGivesKnownValues() {
+        assertEquals(0x82e4cd0f0dd5f3b5L, derive(0L, SEED, PURPOSE));
+        assertEquals(0xd5c81fbc461cb595L, derive(0x1122334455667788L, SEED, PURPOSE));
+    }
+
+    @Test
+    public void deriveIsRepeatable() {
+        assertEquals(derive(7L, SEED, PURPOSE), derive(7L, SEED, PURPOSE));
+    }
+
+    @Test
+    public void everyInputChangesTheResult() {
+        long base = derive(7L, SEED, PURPOSE);
+
+        assertTrue(base != derive(8L, SEED, PURPOSE));
+        assertTrue(base != derive(7L, SEED + 1, PURPOSE));
+        assertTrue(base != derive(7L, SEED, PURPOSE + 1));
+    }
+
+    @Test
+    public void configVersionIgnoresKeyOrderAndWhitespace() {
+        Properties first = new Properties();
+        first.setProperty("baseMoneyReward", "100");
+        first.setProperty("rareWindow", "180");
+
+        Properties second = new Properties();
+        second.setProperty("rareWindow", " 180 ");
+        second.setProperty("baseMoneyReward", "100");
+
+        assertEquals(TreasureSeed.getConfigVersion(first), TreasureSeed.getConfigVersion(second));
+
+        second.setProperty("baseMoneyReward", "101");
+
+        assertTrue(TreasureSeed.getConfigVersion(first) != TreasureSeed.getConfigVersion(second));
+    }
+
+    @Test
+    public void configVersionIgnoresLoggingOptions() {
+        Properties first = new Properties();
+        first.setProperty("baseMoneyReward", "100");
+        first.setProperty("tierReward3", "5,10");
+
+        Properties second = new Properties();
+        second.putAll(first);
+        second.setProperty("logLevel", "FINEST");
+
+        assertEquals(TreasureSeed.getConfigVersion(first), TreasureSeed.getConfigVersion(second));
+
+        second.setProperty("tierReward3", "5,11");
+
+        assertTrue(TreasureSeed.getConfigVersion(first) != TreasureSeed.getConfigVersion(second));
+    }
+}